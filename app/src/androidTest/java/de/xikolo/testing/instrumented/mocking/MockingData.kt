@@ -1,6 +1,7 @@
 package de.xikolo.testing.instrumented.mocking
 
 import android.content.Context
+import de.xikolo.network.sync.DeltaSync
 import de.xikolo.testing.instrumented.mocking.base.BaseMockedResponse
 import okhttp3.Request
 
@@ -10,6 +11,7 @@ class MockingData {
         /**
          * Returns a mocked response object based on the {@code request} supplied.
          * Returns null if request cannot be mocked and the {@link MockingInterceptor} should proceed without mocking.
+         * Requests for the changes since a watermark get a delta response, if there is one for the request.
          */
         fun getResponse(context: Context, request: Request): BaseMockedResponse? {
             return when (request.url.encodedPath) {
@@ -17,10 +19,19 @@ class MockingData {
                 MockedRequest.COURSES.path      -> MockedResponseFromJsonAsset(context, "mockdata/courses")
                 MockedRequest.CHANNELS.path     -> MockedResponseFromJsonAsset(context, "mockdata/channels")
                 MockedRequest.USERS_ME.path     -> MockedResponseFromJsonAsset(context, "mockdata/users/me")
-                MockedRequest.COURSE_DATES.path -> MockedResponseFromJsonAsset(context, "mockdata/course-dates")
+                MockedRequest.COURSE_DATES.path ->
+                    if (isDeltaRequest(request)) {
+                        MockedResponseFromJsonAsset(context, "mockdata/course-dates-delta")
+                    } else {
+                        MockedResponseFromJsonAsset(context, "mockdata/course-dates")
+                    }
                 else                            -> null
             }
         }
+
+        private fun isDeltaRequest(request: Request): Boolean {
+            return request.url.queryParameter(DeltaSync.PARAM_SINCE) != null
+        }
     }
 
 }
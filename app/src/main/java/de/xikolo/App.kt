@@ -6,7 +6,9 @@ import android.webkit.WebView
 import androidx.preference.PreferenceManager
 import de.xikolo.config.Config
 import de.xikolo.lanalytics.Lanalytics
+import de.xikolo.managers.UserManager
 import de.xikolo.models.migrate.RealmSchemaMigration
+import de.xikolo.network.HttpTransport
 import de.xikolo.states.ConnectivityStateLiveData
 import de.xikolo.states.DownloadStateLiveData
 import de.xikolo.states.LoginStateLiveData
@@ -16,7 +18,7 @@ import de.xikolo.utils.ClientUtil
 import io.realm.Realm
 import io.realm.RealmConfiguration
 
-class App : Application() {
+class App : Application(), Lanalytics.TokenProvider {
 
     companion object {
         val TAG: String = App::class.java.simpleName
@@ -52,7 +54,9 @@ class App : Application() {
     val state = State()
 
     val lanalytics: Lanalytics by lazy {
-        Lanalytics.getInstance(this, Config.API_URL + Config.LANALYTICS_PATH)
+        Lanalytics.getInstance(this, Config.API_URL + Config.LANALYTICS_PATH).also {
+            it.setHttpClient(HttpTransport.lanalyticsClient)
+        }
     }
 
     val clientId: String by lazy {
@@ -63,6 +67,8 @@ class App : Application() {
         instance = this
     }
 
+    override fun getLanalyticsToken(): String? = UserManager.token
+
     override fun onCreate() {
         super.onCreate()
 
@@ -12,8 +12,7 @@ import com.bumptech.glide.load.model.GlideUrl
 import com.bumptech.glide.module.AppGlideModule
 import com.bumptech.glide.request.RequestOptions
 import de.xikolo.R
-import de.xikolo.network.ApiService
-import okhttp3.OkHttpClient
+import de.xikolo.network.HttpTransport
 import java.io.InputStream
 
 @GlideModule
@@ -40,10 +39,7 @@ class GlideConfig : AppGlideModule() {
     }
 
     override fun registerComponents(context: Context, glide: Glide, registry: Registry) {
-        val client = OkHttpClient.Builder()
-            .addInterceptor(ApiService.userAgentInterceptor)
-            .build()
-        val factory = OkHttpUrlLoader.Factory(client)
+        val factory = OkHttpUrlLoader.Factory(HttpTransport.imageClient)
         registry.replace(GlideUrl::class.java, InputStream::class.java, factory)
     }
 
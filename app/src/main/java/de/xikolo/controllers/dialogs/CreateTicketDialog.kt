@@ -182,7 +182,7 @@ class CreateTicketDialog : ViewModelDialogFragment<TicketViewModel>(), HelpdeskT
             }
             getButton(AlertDialog.BUTTON_POSITIVE).setOnClickListener {
                 if (context.isOnline) {
-                    viewModel.send(titleEditText.text.toString(), messageEditText.text.toString(), topic, emailEditText.text.toString(), courseId)
+                    viewModel.send(titleEditText.text.toString(), messageEditText.text.toString(), topic, emailEditText.text.toString(), courseId, attachAnalyticsMetrics = true)
                     dialog?.dismiss()
                 } else {
                     showToast(R.string.toast_no_network)
@@ -18,6 +18,7 @@ import de.xikolo.extensions.observe
 import de.xikolo.models.DownloadAsset
 import de.xikolo.models.Item
 import de.xikolo.models.Video
+import de.xikolo.storages.WatchedSegmentsStorage
 import de.xikolo.utils.LanalyticsUtil
 import de.xikolo.utils.extensions.cast
 import de.xikolo.utils.extensions.isCastConnected
@@ -25,6 +26,7 @@ import de.xikolo.utils.extensions.videoThumbnailSize
 import de.xikolo.viewmodels.section.VideoPreviewViewModel
 import de.xikolo.views.CustomSizeImageView
 import java.util.concurrent.TimeUnit
+import kotlin.math.roundToInt
 
 class VideoPreviewFragment : ViewModelFragment<VideoPreviewViewModel>() {
 
@@ -66,6 +68,8 @@ class VideoPreviewFragment : ViewModelFragment<VideoPreviewViewModel>() {
 
     private var video: Video? = null
 
+    private val watchedSegmentsStorage = WatchedSegmentsStorage()
+
     override val layoutResource = R.layout.fragment_video_preview
 
     override fun createViewModel(): VideoPreviewViewModel {
@@ -162,7 +166,14 @@ class VideoPreviewFragment : ViewModelFragment<VideoPreviewViewModel>() {
 
         val minutes = TimeUnit.SECONDS.toMinutes(video.duration.toLong())
         val seconds = video.duration - TimeUnit.MINUTES.toSeconds(TimeUnit.SECONDS.toMinutes(video.duration.toLong()))
-        textDuration.text = getString(R.string.duration, minutes, seconds)
+        // watched share as recorded by the player, also available offline
+        val durationMillis = TimeUnit.SECONDS.toMillis(video.duration.toLong())
+        val watched = (watchedSegmentsStorage.getWatchedFraction(video.id, durationMillis) * 100).roundToInt()
+        textDuration.text = if (watched > 0) {
+            getString(R.string.duration_watched, minutes, seconds, watched)
+        } else {
+            getString(R.string.duration, minutes, seconds)
+        }
 
         viewPlay.setOnClickListener { play() }
     }
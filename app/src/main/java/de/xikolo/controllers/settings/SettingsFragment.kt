@@ -4,6 +4,7 @@ import android.content.Intent
 import android.content.SharedPreferences
 import android.net.Uri
 import android.os.Bundle
+import androidx.appcompat.app.AlertDialog
 import androidx.browser.customtabs.CustomTabsIntent
 import androidx.core.content.ContextCompat
 import androidx.preference.*
@@ -11,6 +12,7 @@ import de.psdev.licensesdialog.LicensesDialog
 import de.xikolo.App
 import de.xikolo.BuildConfig
 import de.xikolo.R
+import de.xikolo.config.Config
 import de.xikolo.config.Feature
 import de.xikolo.controllers.dialogs.ProgressDialogHorizontal
 import de.xikolo.controllers.dialogs.ProgressDialogHorizontalAutoBundle
@@ -21,7 +23,10 @@ import de.xikolo.extensions.observe
 import de.xikolo.managers.PermissionManager
 import de.xikolo.managers.UserManager
 import de.xikolo.models.Storage
+import de.xikolo.network.HttpTransport
+import de.xikolo.network.jobs.base.JobExecutor
 import de.xikolo.services.DownloadService
+import de.xikolo.utils.LanalyticsUtil
 import de.xikolo.utils.extensions.*
 import java.util.*
 
@@ -226,6 +231,30 @@ class SettingsFragment : PreferenceFragmentCompat(), SharedPreferences.OnSharedP
 
         info.addPreference(buildVersion)
 
+        if (Config.DEBUG) {
+            val analyticsMetrics = Preference(preferenceScreen.context)
+            analyticsMetrics.title = getString(R.string.settings_title_analytics_metrics)
+            analyticsMetrics.setOnPreferenceClickListener {
+                showAnalyticsMetrics()
+                true
+            }
+
+            info.addPreference(analyticsMetrics)
+
+            val httpTransport = Preference(preferenceScreen.context)
+            httpTransport.title = getString(R.string.settings_title_http_transport)
+            httpTransport.setOnPreferenceClickListener {
+                AlertDialog.Builder(requireActivity())
+                    .setTitle(R.string.settings_title_http_transport)
+                    .setMessage(HttpTransport.utilization + "\n\n" + JobExecutor.summary)
+                    .setPositiveButton(android.R.string.ok, null)
+                    .show()
+                true
+            }
+
+            info.addPreference(httpTransport)
+        }
+
         loginOut = Preference(preferenceScreen.context)
         if (UserManager.isAuthorized) {
             buildLogoutView(loginOut)
@@ -236,6 +265,21 @@ class SettingsFragment : PreferenceFragmentCompat(), SharedPreferences.OnSharedP
         info.addPreference(loginOut)
     }
 
+    private fun showAnalyticsMetrics() {
+        Thread {
+            val summary = LanalyticsUtil.metricsSummary
+            activity?.runOnUiThread {
+                activity?.let {
+                    AlertDialog.Builder(it)
+                        .setTitle(R.string.settings_title_analytics_metrics)
+                        .setMessage(summary)
+                        .setPositiveButton(android.R.string.ok, null)
+                        .show()
+                }
+            }
+        }.start()
+    }
+
     private fun refreshPipStatus() {
         val pipSettings = findPreference<Preference>(getString(R.string.preference_video_pip))
         pipSettings?.let {
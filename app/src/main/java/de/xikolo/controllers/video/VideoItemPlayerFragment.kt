@@ -3,6 +3,9 @@ package de.xikolo.controllers.video
 import android.content.Context
 import android.content.res.Configuration
 import android.os.Bundle
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
 import de.xikolo.controllers.helper.VideoSettingsHelper
 import de.xikolo.managers.DownloadManager
 import de.xikolo.models.DownloadAsset
@@ -11,7 +14,9 @@ import de.xikolo.models.Video
 import de.xikolo.models.VideoSubtitles
 import de.xikolo.models.dao.ItemDao
 import de.xikolo.models.dao.VideoDao
+import de.xikolo.storages.WatchedSegmentsStorage
 import de.xikolo.utils.LanalyticsUtil
+import de.xikolo.utils.WatchedSegments
 import io.realm.Realm
 import java.util.*
 import kotlin.math.max
@@ -23,6 +28,9 @@ class VideoItemPlayerFragment : VideoStreamPlayerFragment() {
 
         private const val VIDEO_POSITION_REWIND_TIME = 10000
 
+        private const val SEGMENT_CHECKPOINT_INTERVAL = 30000L
+        private const val SEGMENT_REPORT_INTERVAL = 5 * 60000L
+
         private const val BUNDLING_KEY_COURSE_ID = "course_id"
         private const val BUNDLING_KEY_SECTION_ID = "section_id"
         private const val BUNDLING_KEY_ITEM_ID = "item_id"
@@ -83,6 +91,28 @@ class VideoItemPlayerFragment : VideoStreamPlayerFragment() {
 
     private val videoDao = VideoDao(Realm.getDefaultInstance())
 
+    private val watchedSegmentsStorage = WatchedSegmentsStorage()
+
+    private lateinit var watchedSegments: WatchedSegments
+
+    // player position at which the currently watched segment started, null if not playing
+    private var segmentStart: Int? = null
+
+    private var watchedSegmentsUnsaved = false
+
+    private var watchedSegmentsUnreported = false
+
+    private var lastSegmentsReport = 0L
+
+    private val segmentHandler = Handler(Looper.getMainLooper())
+
+    private val segmentCheckpoint = object : Runnable {
+        override fun run() {
+            checkpointSegment()
+            segmentHandler.postDelayed(this, SEGMENT_CHECKPOINT_INTERVAL)
+        }
+    }
+
     override fun onAttach(context: Context) {
         super.onAttach(context)
         downloadManager = DownloadManager(activity!!)
@@ -94,10 +124,13 @@ class VideoItemPlayerFragment : VideoStreamPlayerFragment() {
         unbundle(this, arguments)
 
         initialVideoPosition = max(video.progress - VIDEO_POSITION_REWIND_TIME, 0)
+
+        watchedSegments = watchedSegmentsStorage.get(videoId)
+        lastSegmentsReport = SystemClock.elapsedRealtime()
     }
 
     override fun play(fromUser: Boolean) {
-        if (fromUser) {
+        if (fromUser && LanalyticsUtil.trackRawVideoEvents) {
             LanalyticsUtil.trackVideoPlay(itemId,
                 courseId, sectionId,
                 currentPosition,
@@ -107,10 +140,15 @@ class VideoItemPlayerFragment : VideoStreamPlayerFragment() {
                 sourceString)
         }
         super.play(fromUser)
+        startSegment()
     }
 
     override fun pause(fromUser: Boolean) {
-        if (fromUser) {
+        // also called when the player is left, which ends any seek or speed change
+        LanalyticsUtil.flushVideoEvents()
+        endSegment()
+        saveWatchedSegments(true)
+        if (fromUser && LanalyticsUtil.trackRawVideoEvents) {
             LanalyticsUtil.trackVideoPause(itemId,
                 courseId, sectionId,
                 currentPosition,
@@ -123,7 +161,7 @@ class VideoItemPlayerFragment : VideoStreamPlayerFragment() {
     }
 
     override fun seekTo(progress: Int, fromUser: Boolean) {
-        if (fromUser) {
+        if (fromUser && LanalyticsUtil.trackRawVideoEvents) {
             LanalyticsUtil.trackVideoSeek(itemId,
                 courseId, sectionId,
                 currentPosition,
@@ -133,7 +171,11 @@ class VideoItemPlayerFragment : VideoStreamPlayerFragment() {
                 currentQualityString,
                 sourceString)
         }
+        closeSegment()
         super.seekTo(progress, fromUser)
+        if (segmentStart != null) {
+            segmentStart = progress
+        }
     }
 
     override fun changeQuality(oldVideoMode: VideoSettingsHelper.VideoMode, newVideoMode: VideoSettingsHelper.VideoMode, fromUser: Boolean) {
@@ -231,6 +273,50 @@ class VideoItemPlayerFragment : VideoStreamPlayerFragment() {
             sourceString)
     }
 
+    private fun startSegment() {
+        segmentStart = currentPosition
+        segmentHandler.removeCallbacks(segmentCheckpoint)
+        segmentHandler.postDelayed(segmentCheckpoint, SEGMENT_CHECKPOINT_INTERVAL)
+    }
+
+    private fun endSegment() {
+        segmentHandler.removeCallbacks(segmentCheckpoint)
+        closeSegment()
+        segmentStart = null
+    }
+
+    private fun closeSegment() {
+        val start = segmentStart ?: return
+        val end = currentPosition
+        if (end > start) {
+            watchedSegments.add(start.toLong(), end.toLong())
+            watchedSegmentsUnsaved = true
+        }
+    }
+
+    private fun checkpointSegment() {
+        if (segmentStart == null) {
+            return
+        }
+        closeSegment()
+        segmentStart = currentPosition
+        saveWatchedSegments(SystemClock.elapsedRealtime() - lastSegmentsReport >= SEGMENT_REPORT_INTERVAL)
+    }
+
+    private fun saveWatchedSegments(report: Boolean) {
+        if (watchedSegmentsUnsaved) {
+            watchedSegmentsStorage.put(videoId, watchedSegments)
+            watchedSegmentsUnsaved = false
+            watchedSegmentsUnreported = true
+        }
+
+        if (report && watchedSegmentsUnreported) {
+            LanalyticsUtil.trackVideoWatchedSegments(itemId, courseId, sectionId, watchedSegments, duration)
+            watchedSegmentsUnreported = false
+            lastSegmentsReport = SystemClock.elapsedRealtime()
+        }
+    }
+
     private fun videoDownloadPresent(item: DownloadAsset.Course.Item): Boolean {
         return !downloadManager.downloadRunning(item) && downloadManager.downloadExists(item)
     }
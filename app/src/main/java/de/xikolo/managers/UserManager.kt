@@ -1,8 +1,12 @@
 package de.xikolo.managers
 
 import de.xikolo.App
+import de.xikolo.network.ApiService
 import de.xikolo.storages.ApplicationPreferences
+import de.xikolo.storages.SyncMetadataStorage
 import de.xikolo.storages.UserStorage
+import de.xikolo.storages.ValidatorStorage
+import de.xikolo.storages.WatchedSegmentsStorage
 import io.realm.Realm
 
 class UserManager {
@@ -40,6 +44,13 @@ class UserManager {
             val appPreferences = ApplicationPreferences()
             appPreferences.delete()
 
+            WatchedSegmentsStorage().delete()
+
+            // the synced data is deleted below
+            ValidatorStorage().delete()
+            SyncMetadataStorage().delete()
+            Thread { ApiService.evictHttpCache() }.start()
+
             application.lanalytics.deleteData()
 
             val realm = Realm.getDefaultInstance()
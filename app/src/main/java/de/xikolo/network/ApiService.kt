@@ -1,5 +1,6 @@
 package de.xikolo.network
 
+import android.util.Log
 import com.squareup.moshi.Moshi
 import de.xikolo.App
 import de.xikolo.R
@@ -14,32 +15,72 @@ import okhttp3.OkHttpClient
 import okhttp3.logging.HttpLoggingInterceptor
 import retrofit2.Retrofit
 import retrofit2.converter.moshi.MoshiConverterFactory
+import java.io.IOException
 import java.util.*
 
 object ApiService {
 
-    private const val HTTP_CACHE_SIZE_BYTES: Long = 1024 * 1024 * 2
+    private val acceptJsonApi: String by lazy {
+        Config.MEDIA_TYPE_JSON_API + "; xikolo-version=" + Config.XIKOLO_API_VERSION
+    }
+
+    // plain json calls
+    private val plainJsonPaths = setOf(
+        "/api/v2/authenticate"
+    )
+
+    private val appHost: String by lazy {
+        App.instance.getString(R.string.app_host)
+    }
+
+    // one cache per directory, shared by all clients built here
+    private val httpCache: Cache by lazy {
+        Cache(App.instance.cacheDir, App.instance.resources.getInteger(R.integer.http_cache_size_mb) * 1024L * 1024L)
+    }
 
     val authenticationInterceptor = { chain: Interceptor.Chain ->
         val original = chain.request()
 
-        val builder = original.newBuilder()
-        if (original.url.host == App.instance.getString(R.string.app_host) && UserManager.isAuthorized) {
-            builder.header(
-                Config.HEADER_AUTH,
-                Config.HEADER_AUTH_VALUE_PREFIX_JSON_API + UserManager.token!!
+        if (original.url.host == appHost && UserManager.isAuthorized) {
+            chain.proceed(
+                original.newBuilder()
+                    .header(Config.HEADER_AUTH, Config.HEADER_AUTH_VALUE_PREFIX_JSON_API + UserManager.token!!)
+                    .build()
             )
+        } else {
+            chain.proceed(original)
         }
+    }
+
+    val userAgentInterceptor = { chain: Interceptor.Chain ->
+        val original = chain.request()
+
+        val builder = original.newBuilder()
+            .header(Config.HEADER_USER_AGENT, Config.HEADER_USER_AGENT_VALUE)
 
         chain.proceed(builder.build())
     }
 
-    val userAgentInterceptor = { chain: Interceptor.Chain ->
+    /**
+     * Sets all headers of API calls, including authentication and user agent, with a single copy
+     * of the request.
+     */
+    private val headerInterceptor = { chain: Interceptor.Chain ->
         val original = chain.request()
 
+        val plainJson = original.url.encodedPath in plainJsonPaths
+
         val builder = original.newBuilder()
+            .header(Config.HEADER_ACCEPT, if (plainJson) Config.MEDIA_TYPE_JSON else acceptJsonApi)
+            .header(Config.HEADER_CONTENT_TYPE, if (plainJson) Config.MEDIA_TYPE_JSON else Config.MEDIA_TYPE_JSON_API)
+            .header(Config.HEADER_USER_PLATFORM, Config.HEADER_USER_PLATFORM_VALUE)
+            .header(Config.HEADER_ACCEPT_LANGUAGE, Locale.getDefault().language)
             .header(Config.HEADER_USER_AGENT, Config.HEADER_USER_AGENT_VALUE)
 
+        if (original.url.host == appHost && UserManager.isAuthorized) {
+            builder.header(Config.HEADER_AUTH, Config.HEADER_AUTH_VALUE_PREFIX_JSON_API + UserManager.token!!)
+        }
+
         chain.proceed(builder.build())
     }
 
@@ -99,8 +140,8 @@ object ApiService {
         val retrofit = Retrofit.Builder()
             .baseUrl(Config.API_URL)
             .client(client)
-            .addConverterFactory(JsonApiConverterFactory.create(moshi))
-            .addConverterFactory(MoshiConverterFactory.create())
+            .addConverterFactory(PayloadStats.wrap(JsonApiConverterFactory.create(moshi)))
+            .addConverterFactory(PayloadStats.wrap(MoshiConverterFactory.create()))
             .build()
 
         return retrofit.create(ApiServiceInterface::class.java)
@@ -115,36 +156,30 @@ object ApiService {
             logging.level = HttpLoggingInterceptor.Level.NONE
         }
 
-        return OkHttpClient.Builder()
-            .addInterceptor { chain ->
-                val original = chain.request()
-
-                var mediaType = Config.MEDIA_TYPE_JSON_API
-                var xikoloVersionExtension = "; xikolo-version=" + Config.XIKOLO_API_VERSION
-                val appLanguage = Locale.getDefault().language
-
-                // plain json calls
-                val plainJson = Arrays.asList(
-                    "/api/v2/authenticate"
-                )
-                if (plainJson.contains(original.url.encodedPath)) {
-                    mediaType = Config.MEDIA_TYPE_JSON
-                    xikoloVersionExtension = ""
-                }
-
-                val builder = original.newBuilder()
-                    .header(Config.HEADER_ACCEPT, mediaType + xikoloVersionExtension)
-                    .header(Config.HEADER_CONTENT_TYPE, mediaType)
-                    .header(Config.HEADER_USER_PLATFORM, Config.HEADER_USER_PLATFORM_VALUE)
-                    .header(Config.HEADER_ACCEPT_LANGUAGE, appLanguage)
-
-                chain.proceed(builder.build())
-            }
-            .addInterceptor(authenticationInterceptor)
-            .addInterceptor(userAgentInterceptor)
+        lateinit var client: OkHttpClient
+        client = HttpTransport.root.newBuilder()
+            .addInterceptor(headerInterceptor)
+            .addInterceptor(ConditionalRequests.interceptor)
+            .addInterceptor(CachePolicy.interceptor { client })
             .addInterceptor(logging)
-            .cache(Cache(App.instance.cacheDir, HTTP_CACHE_SIZE_BYTES))
+            .addNetworkInterceptor(CachePolicy.networkInterceptor)
+            .cache(httpCache)
             .build()
+        return client
+    }
+
+    val httpCacheMaxSize: Long
+        get() = httpCache.maxSize()
+
+    /**
+     * Deletes all cached responses, e.g. because they belong to a user who logged out.
+     */
+    fun evictHttpCache() {
+        try {
+            httpCache.evictAll()
+        } catch (e: IOException) {
+            if (Config.DEBUG) Log.e(ApiService::class.java.simpleName, "Could not evict the HTTP cache", e)
+        }
     }
 
 }
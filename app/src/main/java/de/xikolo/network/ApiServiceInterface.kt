@@ -1,11 +1,20 @@
 package de.xikolo.network
 
 import de.xikolo.models.*
+import de.xikolo.network.sync.DeltaSync
+import moe.banana.jsonapi2.ArrayDocument
 import retrofit2.Call
 import retrofit2.http.*
 
 interface ApiServiceInterface {
 
+    companion object {
+        // everything list screens render, the description is only fetched for the detail screen
+        const val COURSE_LIST_FIELDS = "title,slug,start_at,end_at,abstract,image_url,language,status," +
+            "classifiers,teachers,accessible,enrollable,hidden,external,external_url,policy_url," +
+            "certificates,teaser_stream,on_demand,user_enrollment,channel"
+    }
+
     // Base Request for Health Checks on Startup
 
     @HEAD("./")
@@ -13,18 +22,21 @@ interface ApiServiceInterface {
 
     //Channel
 
-    @GET("channels?include=courses")
+    @Headers(ConditionalRequests.OPT_IN)
+    @GET("channels?include=courses&fields[courses]=$COURSE_LIST_FIELDS")
     fun listChannelsWithCourses(): Call<Array<Channel.JsonModel>>
 
-    @GET("channels/{id}?include=courses")
+    @GET("channels/{id}?include=courses&fields[courses]=$COURSE_LIST_FIELDS")
     fun getChannelWithCourses(@Path("id") id: String): Call<Channel.JsonModel>
 
     // Course
 
-    @GET("courses")
+    @Headers(ConditionalRequests.OPT_IN)
+    @GET("courses?fields[courses]=$COURSE_LIST_FIELDS")
     fun listCourses(): Call<Array<Course.JsonModel>>
 
-    @GET("courses?include=user_enrollment")
+    @Headers(ConditionalRequests.OPT_IN)
+    @GET("courses?include=user_enrollment&fields[courses]=$COURSE_LIST_FIELDS")
     fun listCoursesWithEnrollments(): Call<Array<Course.JsonModel>>
 
     @GET("courses/{id}")
@@ -38,8 +50,9 @@ interface ApiServiceInterface {
 
     // Enrollment
 
+    @Headers(ConditionalRequests.OPT_IN)
     @GET("enrollments")
-    fun listEnrollments(): Call<Array<Enrollment.JsonModel>>
+    fun listEnrollments(@Query(DeltaSync.PARAM_SINCE) since: String?): Call<ArrayDocument<Enrollment.JsonModel>>
 
     @POST("enrollments")
     fun createEnrollment(@Body enrollment: Enrollment.JsonModel): Call<Enrollment.JsonModel>
@@ -73,8 +86,9 @@ interface ApiServiceInterface {
 
     // Dates
 
+    @Headers(ConditionalRequests.OPT_IN)
     @GET("course-dates")
-    fun listDates(): Call<Array<CourseDate.JsonModel>>
+    fun listDates(@Query(DeltaSync.PARAM_SINCE) since: String?): Call<ArrayDocument<CourseDate.JsonModel>>
 
     // User and Profile
 
@@ -83,11 +97,13 @@ interface ApiServiceInterface {
 
     // Announcement
 
+    @Headers(ConditionalRequests.OPT_IN)
     @GET("announcements?filter[global]=true")
-    fun listGlobalAnnouncements(): Call<Array<Announcement.JsonModel>>
+    fun listGlobalAnnouncements(@Query(DeltaSync.PARAM_SINCE) since: String?): Call<ArrayDocument<Announcement.JsonModel>>
 
+    @Headers(ConditionalRequests.OPT_IN)
     @GET("announcements")
-    fun listCourseAnnouncements(@Query("filter[course]") courseId: String): Call<Array<Announcement.JsonModel>>
+    fun listCourseAnnouncements(@Query("filter[course]") courseId: String, @Query(DeltaSync.PARAM_SINCE) since: String?): Call<ArrayDocument<Announcement.JsonModel>>
 
     @GET("announcements/{id}")
     fun getAnnouncement(@Path("id") id: String): Call<Announcement.JsonModel>
@@ -97,7 +113,9 @@ interface ApiServiceInterface {
 
     // Documents
 
-    @GET("documents?include=localizations,courses")
+    // Document.courseIds is read from the linkage of the courses relationship, which JSON:API
+    // only guarantees for included relationships, so the courses stay included without attributes
+    @GET("documents?include=localizations,courses&fields[courses]=")
     fun listDocumentsWithLocalizationsForCourse(@Query("filter[course]") courseId: String): Call<Array<Document.JsonModel>>
 
     // Token
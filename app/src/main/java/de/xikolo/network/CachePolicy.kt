@@ -0,0 +1,290 @@
+package de.xikolo.network
+
+import de.xikolo.App
+import de.xikolo.config.Config
+import de.xikolo.utils.extensions.isOnline
+import okhttp3.CacheControl
+import okhttp3.Call
+import okhttp3.Callback
+import okhttp3.HttpUrl.Companion.toHttpUrl
+import okhttp3.Interceptor
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.Response
+import okio.blackholeSink
+import java.io.IOException
+import java.net.HttpURLConnection
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * How long the responses of an endpoint are served from the HTTP cache: fresh for [maxAge],
+ * stale but immediately while they are revalidated in the background for [staleWhileRevalidate]
+ * and as a fallback for [staleIfError], when the device is offline or the server fails, e.g.
+ * because of maintenance. All durations are in seconds.
+ */
+data class CachePolicy(val maxAge: Int, val staleWhileRevalidate: Int, val staleIfError: Int) {
+
+    val isCacheable: Boolean
+        get() = maxAge > 0 || staleWhileRevalidate > 0 || staleIfError > 0
+
+    companion object {
+
+        private const val MINUTE = 60
+        private const val HOUR = 60 * MINUTE
+        private const val DAY = 24 * HOUR
+
+        private const val HEADER_CACHE_CONTROL = "Cache-Control"
+        private const val HEADER_PRAGMA = "Pragma"
+        private const val HEADER_WARNING = "Warning"
+
+        // OkHttp marks responses served beyond their max-age
+        private const val WARNING_STALE = "110"
+
+        private const val MAX_ERROR_BODY_BYTES = 64L * 1024
+
+        val NONE = CachePolicy(0, 0, 0)
+
+        /**
+         * Policies by API path, the first matching rule wins. Data which is changed locally, like
+         * enrollments or visited flags, is never served from the cache, as syncing an older
+         * response would revert the local changes. Courses carry the linkage to their enrollment,
+         * so they are only served as a fallback and their jobs keep the local enrollment then, see
+         * [isFromCache].
+         */
+        private val rules = listOf(
+            Rule("courses", "user_enrollment", NONE),
+            Rule("enrollments", null, NONE),
+            Rule("course-sections", null, NONE),
+            Rule("course-items", null, NONE),
+            Rule("course-progresses", null, NONE),
+            Rule("announcements", null, NONE),
+            Rule("channels", null, CachePolicy(0, 0, 30 * DAY)),
+            Rule("courses", null, CachePolicy(0, 0, 7 * DAY)),
+            Rule("course-dates", null, CachePolicy(5 * MINUTE, HOUR, 7 * DAY)),
+            Rule("documents", null, CachePolicy(HOUR, DAY, 30 * DAY)),
+            Rule("users/me", null, CachePolicy(0, 0, DAY))
+        )
+
+        private val apiPath: String by lazy {
+            Config.API_URL.toHttpUrl().encodedPath
+        }
+
+        private val stats = ConcurrentHashMap<String, Stats>()
+
+        /**
+         * Stores responses according to their policy, regardless of the caching headers of the
+         * server. Has to be added as a network interceptor.
+         */
+        val networkInterceptor = { chain: Interceptor.Chain ->
+            val request = chain.request()
+            val response = chain.proceed(request)
+
+            val policy = ruleFor(request)?.policy ?: NONE
+            if (request.method == "GET" && response.isSuccessful && policy.isCacheable) {
+                response.newBuilder()
+                    .removeHeader(HEADER_PRAGMA)
+                    .header(
+                        HEADER_CACHE_CONTROL,
+                        "private, max-age=" + policy.maxAge +
+                            ", stale-while-revalidate=" + policy.staleWhileRevalidate +
+                            ", stale-if-error=" + policy.staleIfError
+                    )
+                    .build()
+            } else {
+                response
+            }
+        }
+
+        /**
+         * Serves stale responses while revalidating them and as a fallback when the network or
+         * the server fails. Has to be added as an application interceptor behind
+         * [ConditionalRequests.interceptor], it needs the client to revalidate in the background.
+         */
+        fun interceptor(client: () -> OkHttpClient) = { chain: Interceptor.Chain ->
+            val original = chain.request()
+            val rule = ruleFor(original)
+
+            // e.g. background revalidations, which set their own cache control
+            if (original.method != "GET" || rule == null || !rule.policy.isCacheable ||
+                original.header(HEADER_CACHE_CONTROL) != null
+            ) {
+                chain.proceed(original)
+            } else {
+                val policy = rule.policy
+                val stats = stats.getOrPut(rule.name) { Stats() }
+
+                val response = if (policy.staleIfError > 0 && !App.instance.isOnline) {
+                    fromCache(chain, original, policy.staleIfError)
+                        ?.also { stats.staleOnError.incrementAndGet() }
+                        ?: throw IOException("Offline and no cached response for " + original.url)
+                } else {
+                    proceedOrFallback(chain, original, policy, stats)
+                }
+
+                if (response.header(HEADER_WARNING)?.startsWith(WARNING_STALE) == true &&
+                    policy.staleWhileRevalidate > 0 && App.instance.isOnline
+                ) {
+                    revalidate(client(), original)
+                }
+
+                stats.count(response)
+                response
+            }
+        }
+
+        /**
+         * Whether the response has been served from the cache without reaching the server, e.g.
+         * as a fallback while offline. It may predate local changes then.
+         */
+        fun isFromCache(response: retrofit2.Response<*>): Boolean =
+            response.raw().networkResponse == null && response.raw().cacheResponse != null
+
+        /**
+         * Cache hit ratio per endpoint, e.g. for debugging.
+         */
+        val summary: String
+            get() = stats.entries
+                .sortedBy { it.key }
+                .joinToString("\n") { it.key + ": " + it.value }
+
+        /**
+         * Ratio of requests which were answered from the cache without transferring a body, per
+         * endpoint.
+         */
+        val hitRatios: Map<String, Double>
+            get() = stats.mapValues { it.value.hitRatio }
+
+        private fun proceedOrFallback(chain: Interceptor.Chain, original: Request, policy: CachePolicy, stats: Stats): Response {
+            // an unconditional request may be answered by a stale response within the window
+            val request = if (policy.staleWhileRevalidate > 0 && !hasConditions(original)) {
+                original.newBuilder()
+                    .cacheControl(
+                        CacheControl.Builder()
+                            .maxStale(policy.staleWhileRevalidate, TimeUnit.SECONDS)
+                            .build()
+                    )
+                    .build()
+            } else {
+                original
+            }
+
+            val response = try {
+                chain.proceed(request)
+            } catch (e: IOException) {
+                if (policy.staleIfError == 0) throw e
+                return fromCache(chain, original, policy.staleIfError)
+                    ?.also { stats.staleOnError.incrementAndGet() }
+                    ?: throw e
+            }
+
+            if (response.code < HttpURLConnection.HTTP_INTERNAL_ERROR || policy.staleIfError == 0) {
+                return response
+            }
+
+            // the call can only proceed again once the response is closed, so its body is kept
+            val errorBody = response.peekBody(MAX_ERROR_BODY_BYTES)
+            response.close()
+            return fromCache(chain, original, policy.staleIfError)
+                ?.also { stats.staleOnError.incrementAndGet() }
+                ?: response.newBuilder().body(errorBody).build()
+        }
+
+        /**
+         * @return the cached response, or null if there is none within the given staleness
+         */
+        private fun fromCache(chain: Interceptor.Chain, original: Request, maxStale: Int): Response? {
+            // conditions would bypass the cache
+            val request = original.newBuilder()
+                .removeHeader(ConditionalRequests.HEADER_IF_NONE_MATCH)
+                .removeHeader(ConditionalRequests.HEADER_IF_MODIFIED_SINCE)
+                .cacheControl(
+                    CacheControl.Builder()
+                        .onlyIfCached()
+                        .maxStale(maxStale, TimeUnit.SECONDS)
+                        .build()
+                )
+                .build()
+
+            val response = chain.proceed(request)
+            return if (response.cacheResponse == null) {
+                // OkHttp answers unsatisfiable only-if-cached requests with a 504
+                response.close()
+                null
+            } else {
+                response
+            }
+        }
+
+        private fun revalidate(client: OkHttpClient, original: Request) {
+            val request = original.newBuilder()
+                .cacheControl(CacheControl.FORCE_NETWORK)
+                .build()
+
+            client.newCall(request).enqueue(object : Callback {
+                override fun onResponse(call: Call, response: Response) {
+                    // reading the body stores it in the cache
+                    response.use { it.body?.source()?.readAll(blackholeSink()) }
+                }
+
+                override fun onFailure(call: Call, e: IOException) = Unit
+            })
+        }
+
+        private fun hasConditions(request: Request): Boolean =
+            request.header(ConditionalRequests.HEADER_IF_NONE_MATCH) != null ||
+                request.header(ConditionalRequests.HEADER_IF_MODIFIED_SINCE) != null
+
+        private fun ruleFor(request: Request): Rule? {
+            val path = request.url.encodedPath
+            if (!path.startsWith(apiPath)) {
+                return null
+            }
+
+            val resource = path.substring(apiPath.length)
+            val query = request.url.encodedQuery ?: ""
+            return rules.firstOrNull { rule ->
+                (resource == rule.path || resource.startsWith(rule.path + "/")) &&
+                    (rule.queryContains == null || query.contains(rule.queryContains))
+            }
+        }
+
+    }
+
+    private class Rule(val path: String, val queryContains: String?, val policy: CachePolicy) {
+
+        val name: String
+            get() = if (queryContains != null) "$path?$queryContains" else path
+
+    }
+
+    private class Stats {
+
+        val hits = AtomicLong()
+        val validated = AtomicLong()
+        val misses = AtomicLong()
+        val staleOnError = AtomicLong()
+
+        val hitRatio: Double
+            get() {
+                val total = hits.get() + validated.get() + misses.get()
+                return if (total > 0) (hits.get() + validated.get()).toDouble() / total else 0.0
+            }
+
+        fun count(response: Response) {
+            when {
+                response.networkResponse == null && response.cacheResponse != null -> hits.incrementAndGet()
+                response.networkResponse != null && response.cacheResponse != null -> validated.incrementAndGet()
+                else                                                              -> misses.incrementAndGet()
+            }
+        }
+
+        override fun toString(): String =
+            "hits: " + hits.get() + ", validated: " + validated.get() + ", misses: " + misses.get() +
+                ", stale on error: " + staleOnError.get() +
+                ", hit ratio: " + String.format("%.2f", hitRatio)
+
+    }
+
+}
@@ -0,0 +1,96 @@
+package de.xikolo.network
+
+import de.xikolo.config.Config
+import de.xikolo.storages.ValidatorStorage
+import okhttp3.Interceptor
+import okhttp3.Request
+import retrofit2.Response
+import java.net.HttpURLConnection
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Conditional GET for calls which opt in with [OPT_IN]. The validators of a response are stored
+ * only after its data has been synced, so a 304 means that the local data is up to date and the
+ * sync can be skipped entirely.
+ */
+object ConditionalRequests {
+
+    private const val HEADER = "X-Conditional-Request"
+
+    /**
+     * Retrofit header for calls whose jobs handle [isNotModified] and [commit].
+     */
+    const val OPT_IN = "$HEADER: true"
+
+    private const val HEADER_ETAG = "ETag"
+    private const val HEADER_LAST_MODIFIED = "Last-Modified"
+    internal const val HEADER_IF_NONE_MATCH = "If-None-Match"
+    internal const val HEADER_IF_MODIFIED_SINCE = "If-Modified-Since"
+    private const val HEADER_CONTENT_LENGTH = "Content-Length"
+
+    private val storage by lazy { ValidatorStorage() }
+
+    private val notModified = AtomicLong()
+
+    private val bytesSaved = AtomicLong()
+
+    val interceptor = { chain: Interceptor.Chain ->
+        val original = chain.request()
+
+        if (original.header(HEADER) == null) {
+            chain.proceed(original)
+        } else {
+            val builder = original.newBuilder().removeHeader(HEADER)
+            storage.get(key(original))?.let { validators ->
+                validators.etag?.let { builder.header(HEADER_IF_NONE_MATCH, it) }
+                validators.lastModified?.let { builder.header(HEADER_IF_MODIFIED_SINCE, it) }
+            }
+            chain.proceed(builder.build())
+        }
+    }
+
+    /**
+     * Number of syncs skipped because the data was not modified and the bytes that were not
+     * transferred for them, e.g. for debugging.
+     */
+    val summary: String
+        get() = "not modified: " + notModified.get() + ", bytes saved: " + bytesSaved.get()
+
+    /**
+     * @return true if the local data is up to date, the response has no body then
+     */
+    fun isNotModified(response: Response<*>): Boolean {
+        if (response.code() != HttpURLConnection.HTTP_NOT_MODIFIED) {
+            return false
+        }
+
+        notModified.incrementAndGet()
+        storage.get(key(response.raw().request))?.let { bytesSaved.addAndGet(it.size) }
+        return true
+    }
+
+    /**
+     * Stores the validators of a response after its data has been synced successfully.
+     */
+    fun commit(response: Response<*>) {
+        val raw = response.raw()
+        val etag = raw.header(HEADER_ETAG)
+        val lastModified = raw.header(HEADER_LAST_MODIFIED)
+        if (etag == null && lastModified == null) {
+            return
+        }
+
+        // the length on the wire, unknown for chunked responses
+        val size = raw.networkResponse?.header(HEADER_CONTENT_LENGTH)?.toLongOrNull() ?: 0
+        storage.put(key(raw.request), ValidatorStorage.Validators(etag, lastModified, size))
+    }
+
+    /**
+     * Validators are only valid for the same user state and the same local schema.
+     */
+    private fun key(request: Request): String {
+        val authorized = request.header(Config.HEADER_AUTH) != null
+        return Config.REALM_SCHEMA_VERSION.toString() + "|" + authorized + "|" + request.url
+    }
+
+}
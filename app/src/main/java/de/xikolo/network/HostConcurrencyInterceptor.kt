@@ -0,0 +1,81 @@
+package de.xikolo.network
+
+import okhttp3.Interceptor
+import okhttp3.MediaType
+import okhttp3.Response
+import okhttp3.ResponseBody
+import okio.BufferedSource
+import okio.ForwardingSource
+import okio.buffer
+import java.io.InterruptedIOException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Semaphore
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Limits the number of concurrent calls per host, including synchronous calls which bypass the
+ * limits of the dispatcher. A call holds its permit until the response body is closed.
+ */
+class HostConcurrencyInterceptor(private val maxPerHost: Int) : Interceptor {
+
+    private val permits = ConcurrentHashMap<String, Semaphore>()
+
+    /**
+     * The number of calls in flight per host.
+     */
+    val inFlight: Map<String, Int>
+        get() = permits
+            .mapValues { maxPerHost - it.value.availablePermits() }
+            .filterValues { it > 0 }
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val semaphore = permits.getOrPut(chain.request().url.host) { Semaphore(maxPerHost, true) }
+        try {
+            semaphore.acquire()
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw InterruptedIOException("Interrupted while waiting for a connection to " + chain.request().url.host)
+        }
+
+        val response = try {
+            chain.proceed(chain.request())
+        } catch (e: Throwable) {
+            semaphore.release()
+            throw e
+        }
+
+        val body = response.body
+        if (body == null) {
+            semaphore.release()
+            return response
+        }
+        return response.newBuilder()
+            .body(ReleasingResponseBody(body, semaphore))
+            .build()
+    }
+
+    private class ReleasingResponseBody(private val delegate: ResponseBody, semaphore: Semaphore) : ResponseBody() {
+
+        private val released = AtomicBoolean()
+
+        private val source = object : ForwardingSource(delegate.source()) {
+            override fun close() {
+                try {
+                    super.close()
+                } finally {
+                    if (released.compareAndSet(false, true)) {
+                        semaphore.release()
+                    }
+                }
+            }
+        }.buffer()
+
+        override fun contentType(): MediaType? = delegate.contentType()
+
+        override fun contentLength(): Long = delegate.contentLength()
+
+        override fun source(): BufferedSource = source
+
+    }
+
+}
@@ -0,0 +1,75 @@
+package de.xikolo.network
+
+import okhttp3.ConnectionPool
+import okhttp3.Dispatcher
+import okhttp3.OkHttpClient
+import java.util.concurrent.TimeUnit
+
+/**
+ * Builds all HTTP clients of the app from one root client, so they share the connection pool,
+ * the dispatcher and the TLS configuration. Each use adds its own interceptors on top.
+ */
+object HttpTransport {
+
+    private const val MAX_IDLE_CONNECTIONS = 5
+
+    private const val KEEP_ALIVE_MINUTES = 5L
+
+    private const val MAX_REQUESTS = 64
+
+    private const val MAX_REQUESTS_PER_HOST = 5
+
+    // bulk downloads leave connections to the same host for API calls and images
+    private const val MAX_DOWNLOADS_PER_HOST = 2
+
+    private val connectionPool = ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES)
+
+    private val dispatcher = Dispatcher().apply {
+        maxRequests = MAX_REQUESTS
+        maxRequestsPerHost = MAX_REQUESTS_PER_HOST
+    }
+
+    private val downloadLimiter = HostConcurrencyInterceptor(MAX_DOWNLOADS_PER_HOST)
+
+    val root: OkHttpClient by lazy {
+        OkHttpClient.Builder()
+            .connectionPool(connectionPool)
+            .dispatcher(dispatcher)
+            .build()
+    }
+
+    val downloadClient: OkHttpClient by lazy {
+        // Don't use HttpLoggingInterceptor, crashes with OutOfMemoryException!
+        root.newBuilder()
+            .addInterceptor(downloadLimiter)
+            .addInterceptor(ApiService.authenticationInterceptor)
+            .addInterceptor(ApiService.userAgentInterceptor)
+            .build()
+    }
+
+    val imageClient: OkHttpClient by lazy {
+        root.newBuilder()
+            .addInterceptor(ApiService.userAgentInterceptor)
+            .build()
+    }
+
+    /**
+     * Lanalytics sets its own headers, so it uses the root client as is.
+     */
+    val lanalyticsClient: OkHttpClient
+        get() = root
+
+    /**
+     * Current usage of the shared connection pool and dispatcher, e.g. for debugging.
+     */
+    val utilization: String
+        get() = "connections: " + connectionPool.connectionCount() +
+            " (idle: " + connectionPool.idleConnectionCount() + ", max idle: " + MAX_IDLE_CONNECTIONS + ")\n" +
+            "running calls: " + dispatcher.runningCallsCount() +
+            ", queued calls: " + dispatcher.queuedCallsCount() + "\n" +
+            "downloads per host: " + downloadLimiter.inFlight + "\n" +
+            "conditional requests: " + ConditionalRequests.summary + "\n" +
+            "cache (max " + ApiService.httpCacheMaxSize / 1024 / 1024 + " MB):\n" + CachePolicy.summary + "\n" +
+            "payloads:\n" + PayloadStats.summary
+
+}
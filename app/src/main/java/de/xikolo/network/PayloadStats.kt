@@ -0,0 +1,98 @@
+package de.xikolo.network
+
+import android.os.SystemClock
+import okhttp3.RequestBody
+import okhttp3.ResponseBody
+import retrofit2.Converter
+import retrofit2.Retrofit
+import retrofit2.http.GET
+import java.lang.reflect.Type
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Records the size of the response bodies and the time it takes to parse them per endpoint,
+ * e.g. to compare payloads before and after changing the requested fields.
+ */
+object PayloadStats {
+
+    private val stats = ConcurrentHashMap<String, Stats>()
+
+    /**
+     * Payload size and parse time per endpoint, e.g. for debugging.
+     */
+    val summary: String
+        get() = stats.entries
+            .sortedBy { it.key }
+            .joinToString("\n") { it.key + ": " + it.value }
+
+    /**
+     * Measures the response bodies parsed by the given factory.
+     */
+    fun wrap(delegate: Converter.Factory): Converter.Factory = MeasuringConverterFactory(delegate)
+
+    /**
+     * The path and the included relationships of a call, without fieldsets and filters.
+     */
+    internal fun endpoint(relativeUrl: String): String {
+        val path = relativeUrl.substringBefore('?')
+        val include = relativeUrl.substringAfter('?', "")
+            .split('&')
+            .firstOrNull { it.startsWith("include=") }
+        return if (include != null) "$path?$include" else path
+    }
+
+    private class MeasuringConverterFactory(private val delegate: Converter.Factory) : Converter.Factory() {
+
+        override fun responseBodyConverter(type: Type, annotations: Array<Annotation>, retrofit: Retrofit): Converter<ResponseBody, *>? {
+            val converter = delegate.responseBodyConverter(type, annotations, retrofit) ?: return null
+            val get = annotations.filterIsInstance<GET>().firstOrNull() ?: return converter
+
+            val stats = stats.getOrPut(endpoint(get.value)) { Stats() }
+            return Converter<ResponseBody, Any?> { body ->
+                // the body is read completely for parsing anyway
+                val source = body.source()
+                source.request(Long.MAX_VALUE)
+                val bytes = source.buffer.size
+
+                val start = SystemClock.elapsedRealtime()
+                try {
+                    converter.convert(body)
+                } finally {
+                    stats.parsed(bytes, SystemClock.elapsedRealtime() - start)
+                }
+            }
+        }
+
+        override fun requestBodyConverter(type: Type, parameterAnnotations: Array<Annotation>, methodAnnotations: Array<Annotation>, retrofit: Retrofit): Converter<*, RequestBody>? =
+            delegate.requestBodyConverter(type, parameterAnnotations, methodAnnotations, retrofit)
+
+        override fun stringConverter(type: Type, annotations: Array<Annotation>, retrofit: Retrofit): Converter<*, String>? =
+            delegate.stringConverter(type, annotations, retrofit)
+
+    }
+
+    private class Stats {
+
+        private var count = 0L
+        private var bytes = 0L
+        private var lastBytes = 0L
+        private var parseMillis = 0L
+
+        @Synchronized
+        fun parsed(bytes: Long, millis: Long) {
+            count++
+            this.bytes += bytes
+            lastBytes = bytes
+            parseMillis += millis
+        }
+
+        @Synchronized
+        override fun toString(): String {
+            val n = count.coerceAtLeast(1)
+            return count.toString() + " responses, avg " + bytes / n + " bytes (last " + lastBytes + ")" +
+                ", avg parse " + parseMillis / n + " ms"
+        }
+
+    }
+
+}
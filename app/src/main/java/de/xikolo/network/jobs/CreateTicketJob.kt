@@ -7,11 +7,12 @@ import de.xikolo.models.Ticket
 import de.xikolo.network.ApiService
 import de.xikolo.network.jobs.base.NetworkJob
 import de.xikolo.network.jobs.base.NetworkStateLiveData
+import de.xikolo.utils.LanalyticsUtil
 import moe.banana.jsonapi2.HasOne
 import ru.gildor.coroutines.retrofit.awaitResponse
 import java.util.*
 
-class CreateTicketJob(val title: String, private val report: String, private val topic: String, private val mail: String? = null, val courseId: String? = null, networkState: NetworkStateLiveData, userRequest: Boolean) : NetworkJob(networkState, userRequest) {
+class CreateTicketJob(val title: String, private val report: String, private val topic: String, private val mail: String? = null, val courseId: String? = null, private val attachAnalyticsMetrics: Boolean = false, networkState: NetworkStateLiveData, userRequest: Boolean) : NetworkJob(networkState, userRequest) {
 
     companion object {
         val TAG: String = CreateTicketJob::class.java.simpleName
@@ -23,7 +24,11 @@ class CreateTicketJob(val title: String, private val report: String, private val
         ticket.report = report
         ticket.topic = topic
         ticket.language = Locale.getDefault().language
-        ticket.data = Config.HEADER_USER_AGENT_VALUE
+        ticket.data = if (attachAnalyticsMetrics) {
+            Config.HEADER_USER_AGENT_VALUE + "\n\n" + LanalyticsUtil.metricsSummary
+        } else {
+            Config.HEADER_USER_AGENT_VALUE
+        }
         ticket.mail = mail
 
         courseId?.let { ticket.course = HasOne(Course.JsonModel().type, it) }
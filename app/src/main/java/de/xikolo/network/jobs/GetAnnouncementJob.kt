@@ -14,6 +14,8 @@ class GetAnnouncementJob(private val announcementId: String, networkState: Netwo
         val TAG: String = GetAnnouncementJob::class.java.simpleName
     }
 
+    override val requestKey: String? = "$TAG|$announcementId"
+
     override suspend fun onRun() {
         val response = ApiService.instance.getAnnouncement(announcementId).awaitResponse()
 
@@ -4,6 +4,7 @@ import android.util.Log
 import de.xikolo.config.Config
 import de.xikolo.models.Course
 import de.xikolo.network.ApiService
+import de.xikolo.network.CachePolicy
 import de.xikolo.network.jobs.base.NetworkJob
 import de.xikolo.network.jobs.base.NetworkStateLiveData
 import de.xikolo.network.sync.Sync
@@ -15,6 +16,8 @@ class GetChannelWithCoursesJob(private val channelId: String, networkState: Netw
         val TAG: String = GetChannelWithCoursesJob::class.java.simpleName
     }
 
+    override val requestKey: String? = "$TAG|$channelId"
+
     override suspend fun onRun() {
         val response = ApiService.instance.getChannelWithCourses(channelId).awaitResponse()
 
@@ -24,9 +27,16 @@ class GetChannelWithCoursesJob(private val channelId: String, networkState: Netw
             Sync.Data.with(response.body()!!)
                 .saveOnly()
                 .run()
-            Sync.Included.with<Course>(response.body()!!)
+            val courses = Sync.Included.with<Course>(response.body()!!)
                 .saveOnly()
-                .run()
+                // not part of the course list fields
+                .keepLocal("description")
+                .onlyChanged()
+            if (CachePolicy.isFromCache(response)) {
+                // the fallback may predate local enrollment changes
+                courses.keepLocal("enrollmentId")
+            }
+            courses.run()
 
             success()
         } else {
@@ -16,6 +16,8 @@ class GetCourseJob(private val courseId: String, networkState: NetworkStateLiveD
         val TAG: String = GetCourseJob::class.java.simpleName
     }
 
+    override val requestKey: String? = "$TAG|$courseId|" + UserManager.isAuthorized
+
     override suspend fun onRun() {
         val response = if (UserManager.isAuthorized) {
             ApiService.instance.getCourseWithEnrollment(courseId).awaitResponse()
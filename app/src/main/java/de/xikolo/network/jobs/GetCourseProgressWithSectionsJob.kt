@@ -15,6 +15,8 @@ class GetCourseProgressWithSectionsJob(private val courseId: String, networkStat
         val TAG: String = GetCourseProgressWithSectionsJob::class.java.simpleName
     }
 
+    override val requestKey: String? = "$TAG|$courseId"
+
     override suspend fun onRun() {
         val response = ApiService.instance.getCourseProgressWithSections(courseId).awaitResponse()
 
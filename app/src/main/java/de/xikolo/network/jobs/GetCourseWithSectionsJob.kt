@@ -4,6 +4,7 @@ import android.util.Log
 import de.xikolo.config.Config
 import de.xikolo.models.Section
 import de.xikolo.network.ApiService
+import de.xikolo.network.CachePolicy
 import de.xikolo.network.jobs.base.NetworkJob
 import de.xikolo.network.jobs.base.NetworkStateLiveData
 import de.xikolo.network.sync.Sync
@@ -15,15 +16,21 @@ class GetCourseWithSectionsJob(private val courseId: String, networkState: Netwo
         val TAG: String = GetCourseWithSectionsJob::class.java.simpleName
     }
 
+    override val requestKey: String? = "$TAG|$courseId"
+
     override suspend fun onRun() {
         val response = ApiService.instance.getCourseWithSections(courseId).awaitResponse()
 
         if (response.isSuccessful && response.body() != null) {
             if (Config.DEBUG) Log.i(TAG, "Course received")
 
-            Sync.Data.with(response.body()!!)
+            val course = Sync.Data.with(response.body()!!)
                 .saveOnly()
-                .run()
+            if (CachePolicy.isFromCache(response)) {
+                // the fallback may predate local enrollment changes
+                course.keepLocal("enrollmentId")
+            }
+            course.run()
             Sync.Included.with<Section>(response.body()!!)
                 .addFilter("courseId", courseId)
                 .run()
@@ -15,17 +15,20 @@ class GetItemWithContentJob(private val itemId: String, networkState: NetworkSta
         val TAG: String = GetItemWithContentJob::class.java.simpleName
     }
 
+    override val requestKey: String? = "$TAG|$itemId"
+
     override suspend fun onRun() {
         val response = ApiService.instance.getItemWithContent(itemId).awaitResponse()
 
         if (response.isSuccessful && response.body() != null) {
             if (Config.DEBUG) Log.i(TAG, "Item received")
 
-            Sync.Data.with(response.body()!!)
-                .saveOnly()
-                .run()
-
-            ItemSyncHelper.syncItemContent(response.body()!!)
+            // the item and its content are committed at once
+            Sync.Batch.of(
+                Sync.Data.with(response.body()!!)
+                    .saveOnly(),
+                *ItemSyncHelper.itemContentSyncs(response.body()!!)
+            ).run()
 
             success()
         } else {
@@ -16,6 +16,8 @@ class GetUserWithProfileJob(networkState: NetworkStateLiveData, userRequest: Boo
         val TAG: String = GetUserWithProfileJob::class.java.simpleName
     }
 
+    override val requestKey: String? = TAG
+
     override suspend fun onRun() {
         val response = ApiService.instance.getUserWithProfile().awaitResponse()
 
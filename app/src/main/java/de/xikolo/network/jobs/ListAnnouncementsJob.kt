@@ -3,8 +3,10 @@ package de.xikolo.network.jobs
 import android.util.Log
 import de.xikolo.config.Config
 import de.xikolo.network.ApiService
+import de.xikolo.network.ConditionalRequests
 import de.xikolo.network.jobs.base.NetworkJob
 import de.xikolo.network.jobs.base.NetworkStateLiveData
+import de.xikolo.network.sync.DeltaSync
 import de.xikolo.network.sync.Sync
 import ru.gildor.coroutines.retrofit.awaitResponse
 
@@ -14,24 +16,33 @@ class ListAnnouncementsJob(private val courseId: String?, userRequest: Boolean,
         val TAG: String = ListAnnouncementsJob::class.java.simpleName
     }
 
+    override val requestKey: String? = "$TAG|$courseId"
+
     override suspend fun onRun() {
+        val syncKey = DeltaSync.key("announcements", courseId ?: "global")
         val response = if (courseId != null) {
-            ApiService.instance.listCourseAnnouncements(courseId).awaitResponse()
+            ApiService.instance.listCourseAnnouncements(courseId, DeltaSync.since(syncKey)).awaitResponse()
         } else {
-            ApiService.instance.listGlobalAnnouncements().awaitResponse()
+            ApiService.instance.listGlobalAnnouncements(DeltaSync.since(syncKey)).awaitResponse()
         }
 
-        if (response.isSuccessful && response.body() != null) {
+        if (ConditionalRequests.isNotModified(response)) {
+            if (Config.DEBUG) Log.i(TAG, "Announcements not modified")
+            success()
+        } else if (response.isSuccessful && response.body() != null) {
             if (Config.DEBUG) Log.i(TAG, "Announcements received")
 
-            val sync = Sync.Data.with(response.body()!!)
+            val changes = DeltaSync.Changes.of(response.body())
+            val sync = Sync.Data.with(response.body()!!.toTypedArray())
             if (courseId != null) {
                 sync.addFilter("courseId", courseId)
             } else {
                 sync.saveOnly()
             }
-            sync.run()
+            changes.applyTo(sync).run()
 
+            DeltaSync.commit(syncKey, changes)
+            ConditionalRequests.commit(response)
             success()
         } else {
             if (Config.DEBUG) Log.e(TAG, "Error while fetching announcements list")
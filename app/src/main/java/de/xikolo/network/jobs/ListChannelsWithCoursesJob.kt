@@ -4,6 +4,8 @@ import android.util.Log
 import de.xikolo.config.Config
 import de.xikolo.models.Course
 import de.xikolo.network.ApiService
+import de.xikolo.network.CachePolicy
+import de.xikolo.network.ConditionalRequests
 import de.xikolo.network.jobs.base.NetworkJob
 import de.xikolo.network.jobs.base.NetworkStateLiveData
 import de.xikolo.network.sync.Sync
@@ -15,18 +17,33 @@ class ListChannelsWithCoursesJob(networkState: NetworkStateLiveData, userRequest
         val TAG: String = ListChannelsWithCoursesJob::class.java.simpleName
     }
 
+    override val servesCacheWhenOffline = true
+
+    override val requestKey: String? = TAG
+
     override suspend fun onRun() {
         val response = ApiService.instance.listChannelsWithCourses().awaitResponse()
 
-        if (response.isSuccessful && response.body() != null) {
+        if (ConditionalRequests.isNotModified(response)) {
+            if (Config.DEBUG) Log.i(TAG, "Channels not modified")
+            success()
+        } else if (response.isSuccessful && response.body() != null) {
             if (Config.DEBUG) Log.i(TAG, "Channels received")
 
             Sync.Data.with(response.body()!!)
                 .run()
-            Sync.Included.with<Course>(response.body()!!)
+            val courses = Sync.Included.with<Course>(response.body()!!)
                 .saveOnly()
-                .run()
-
+                // not part of the course list fields
+                .keepLocal("description")
+                .onlyChanged()
+            if (CachePolicy.isFromCache(response)) {
+                // the fallback may predate local enrollment changes
+                courses.keepLocal("enrollmentId")
+            }
+            courses.run()
+
+            ConditionalRequests.commit(response)
             success()
         } else {
             if (Config.DEBUG) Log.e(TAG, "Error while fetching channels list")
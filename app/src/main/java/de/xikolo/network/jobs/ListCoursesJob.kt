@@ -3,13 +3,12 @@ package de.xikolo.network.jobs
 import android.util.Log
 import de.xikolo.config.Config
 import de.xikolo.managers.UserManager
-import de.xikolo.models.Course
 import de.xikolo.models.Enrollment
 import de.xikolo.network.ApiService
+import de.xikolo.network.ConditionalRequests
 import de.xikolo.network.jobs.base.NetworkJob
 import de.xikolo.network.jobs.base.NetworkStateLiveData
 import de.xikolo.network.sync.Sync
-import io.realm.kotlin.where
 import ru.gildor.coroutines.retrofit.awaitResponse
 
 class ListCoursesJob(networkState: NetworkStateLiveData, userRequest: Boolean) : NetworkJob(networkState, userRequest) {
@@ -18,6 +17,11 @@ class ListCoursesJob(networkState: NetworkStateLiveData, userRequest: Boolean) :
         val TAG: String = ListCoursesJob::class.java.simpleName
     }
 
+    // only the list without enrollments may be served from the cache, see CachePolicy
+    override val servesCacheWhenOffline = !UserManager.isAuthorized
+
+    override val requestKey: String? = TAG + "|" + UserManager.isAuthorized
+
     override suspend fun onRun() {
         val response = if (UserManager.isAuthorized) {
             ApiService.instance.listCoursesWithEnrollments().awaitResponse()
@@ -25,18 +29,22 @@ class ListCoursesJob(networkState: NetworkStateLiveData, userRequest: Boolean) :
             ApiService.instance.listCourses().awaitResponse()
         }
 
-        if (response.isSuccessful && response.body() != null) {
+        if (ConditionalRequests.isNotModified(response)) {
+            if (Config.DEBUG) Log.i(TAG, "Courses not modified")
+            success()
+        } else if (response.isSuccessful && response.body() != null) {
             if (Config.DEBUG) Log.i(TAG, "Courses received")
 
             Sync.Included.with<Enrollment>(response.body()!!)
+                .onlyChanged()
                 .run()
             Sync.Data.with(response.body()!!)
-                .setBeforeCommitCallback { realm, model ->
-                    val course = realm.where<Course>().equalTo("id", model.id).findFirst()
-                    if (course != null) model.description = course.description
-                }
+                // not part of the course list fields
+                .keepLocal("description")
+                .onlyChanged()
                 .run()
 
+            ConditionalRequests.commit(response)
             success()
         } else {
             if (Config.DEBUG) Log.e(TAG, "Error while fetching courses list")
@@ -15,6 +15,8 @@ class ListDocumentsWithLocalizationsForCourseJob(private val courseId: String, u
         val TAG: String = ListDocumentsWithLocalizationsForCourseJob::class.java.simpleName
     }
 
+    override val requestKey: String? = "$TAG|$courseId"
+
     override suspend fun onRun() {
         val response = ApiService.instance.listDocumentsWithLocalizationsForCourse(courseId).awaitResponse()
 
@@ -3,8 +3,10 @@ package de.xikolo.network.jobs
 import android.util.Log
 import de.xikolo.config.Config
 import de.xikolo.network.ApiService
+import de.xikolo.network.ConditionalRequests
 import de.xikolo.network.jobs.base.NetworkJob
 import de.xikolo.network.jobs.base.NetworkStateLiveData
+import de.xikolo.network.sync.DeltaSync
 import de.xikolo.network.sync.Sync
 import ru.gildor.coroutines.retrofit.awaitResponse
 
@@ -14,14 +16,23 @@ class ListEnrollmentsJob(networkState: NetworkStateLiveData, userRequest: Boolea
         val TAG: String = ListEnrollmentsJob::class.java.simpleName
     }
 
+    override val requestKey: String? = TAG
+
     override suspend fun onRun() {
-        val response = ApiService.instance.listEnrollments().awaitResponse()
+        val syncKey = DeltaSync.key("enrollments")
+        val response = ApiService.instance.listEnrollments(DeltaSync.since(syncKey)).awaitResponse()
 
-        if (response.isSuccessful && response.body() != null) {
+        if (ConditionalRequests.isNotModified(response)) {
+            if (Config.DEBUG) Log.i(TAG, "Enrollments not modified")
+            success()
+        } else if (response.isSuccessful && response.body() != null) {
             if (Config.DEBUG) Log.i(TAG, "Enrollments received")
 
-            Sync.Data.with(response.body()!!)
+            val changes = DeltaSync.Changes.of(response.body())
+            changes.applyTo(Sync.Data.with(response.body()!!.toTypedArray())).run()
 
+            DeltaSync.commit(syncKey, changes)
+            ConditionalRequests.commit(response)
             success()
         } else {
             if (Config.DEBUG) Log.e(TAG, "Error while fetching enrollment list")
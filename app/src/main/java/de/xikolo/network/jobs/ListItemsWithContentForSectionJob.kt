@@ -15,16 +15,20 @@ class ListItemsWithContentForSectionJob(private val sectionId: String, networkSt
         val TAG: String = ListItemsWithContentForSectionJob::class.java.simpleName
     }
 
+    override val requestKey: String? = "$TAG|$sectionId"
+
     override suspend fun onRun() {
         val response = ApiService.instance.listItemsWithContentForSection(sectionId).awaitResponse()
 
         if (response.isSuccessful && response.body() != null) {
             if (Config.DEBUG) Log.i(TAG, "Items received")
 
-            Sync.Data.with(response.body()!!)
-                .addFilter("sectionId", sectionId)
-                .run()
-            ItemSyncHelper.syncItemContent(response.body()!!)
+            // the items and their contents are committed at once
+            Sync.Batch.of(
+                Sync.Data.with(response.body()!!)
+                    .addFilter("sectionId", sectionId),
+                *ItemSyncHelper.itemContentSyncs(response.body()!!)
+            ).run()
 
             success()
         } else {
@@ -15,6 +15,8 @@ class ListSectionsWithItemsJob(private val courseId: String, networkState: Netwo
         val TAG: String = ListSectionsWithItemsJob::class.java.simpleName
     }
 
+    override val requestKey: String? = "$TAG|$courseId"
+
     override suspend fun onRun() {
         val response = ApiService.instance.listSectionsWithItemsForCourse(courseId).awaitResponse()
 
@@ -0,0 +1,179 @@
+package de.xikolo.network.jobs.base
+
+import android.os.SystemClock
+import de.xikolo.App
+import de.xikolo.R
+import kotlinx.coroutines.CancellableContinuation
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.suspendCancellableCoroutine
+import java.util.ArrayDeque
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.coroutines.resume
+import kotlin.random.Random
+
+/**
+ * Limits the number of network jobs which run at the same time. Waiting user requests are
+ * always started before waiting background requests.
+ */
+object JobExecutor {
+
+    private const val INITIAL_BACKOFF_MILLIS = 500L
+
+    private const val MAX_BACKOFF_MILLIS = 8000L
+
+    @Volatile
+    var parallelism: Int = App.instance.resources.getInteger(R.integer.network_job_parallelism)
+
+    private val lock = Any()
+
+    private var running = 0
+
+    private val userLane = ArrayDeque<Permit>()
+
+    private val backgroundLane = ArrayDeque<Permit>()
+
+    private val timings = ConcurrentHashMap<String, Timing>()
+
+    /**
+     * Runs the block once a slot is free, suspends until then.
+     *
+     * @param name the job class the timings are recorded for
+     */
+    suspend fun <T> execute(name: String, userRequest: Boolean, block: suspend () -> T): T {
+        val timing = timings.getOrPut(name) { Timing() }
+
+        val queuedAt = SystemClock.elapsedRealtime()
+        val permit = acquire(userRequest)
+        val startedAt = SystemClock.elapsedRealtime()
+        timing.waited(startedAt - queuedAt)
+
+        try {
+            return block()
+        } finally {
+            timing.ran(SystemClock.elapsedRealtime() - startedAt)
+            permit.release()
+        }
+    }
+
+    /**
+     * Full jitter exponential backoff: a random delay below a limit, which doubles per attempt.
+     */
+    fun backoff(attempt: Int): Long {
+        val limit = (INITIAL_BACKOFF_MILLIS shl (attempt - 1).coerceIn(0, 16)).coerceAtMost(MAX_BACKOFF_MILLIS)
+        return Random.nextLong(limit + 1)
+    }
+
+    /**
+     * Queue wait and run times per job class, e.g. for debugging.
+     */
+    val summary: String
+        get() = "running jobs: " + synchronized(lock) { running } + " of " + parallelism +
+            ", waiting: " + synchronized(lock) { userLane.size + backgroundLane.size } + "\n" +
+            timings.entries
+                .sortedBy { it.key }
+                .joinToString("\n") { it.key + ": " + it.value }
+
+    private suspend fun acquire(userRequest: Boolean): Permit {
+        val permit = Permit()
+        synchronized(lock) {
+            if (running < parallelism) {
+                running++
+                permit.granted = true
+                return permit
+            }
+        }
+
+        val lane = if (userRequest) userLane else backgroundLane
+        try {
+            suspendCancellableCoroutine<Unit> { continuation ->
+                val free = synchronized(lock) {
+                    // the running jobs may have been released since the first check
+                    if (running < parallelism) {
+                        running++
+                        permit.granted = true
+                        true
+                    } else {
+                        permit.continuation = continuation
+                        lane.add(permit)
+                        false
+                    }
+                }
+                if (free) {
+                    continuation.resume(Unit)
+                    return@suspendCancellableCoroutine
+                }
+                continuation.invokeOnCancellation {
+                    synchronized(lock) {
+                        lane.remove(permit)
+                    }
+                    // the slot may have been handed over concurrently
+                    permit.release()
+                }
+            }
+        } catch (e: CancellationException) {
+            permit.release()
+            throw e
+        }
+        return permit
+    }
+
+    private class Permit {
+
+        // only changed under the lock
+        var granted = false
+
+        var continuation: CancellableContinuation<Unit>? = null
+
+        private val released = AtomicBoolean()
+
+        /**
+         * Hands a granted slot over to the next waiting job, has no effect when called again.
+         */
+        fun release() {
+            synchronized(lock) {
+                if (!granted || !released.compareAndSet(false, true)) {
+                    return
+                }
+
+                val next = userLane.poll() ?: backgroundLane.poll()
+                if (next != null) {
+                    next.granted = true
+                    next.continuation?.resume(Unit)
+                } else {
+                    running--
+                }
+            }
+        }
+
+    }
+
+    private class Timing {
+
+        private var count = 0L
+        private var waitMillis = 0L
+        private var maxWaitMillis = 0L
+        private var runMillis = 0L
+
+        @Synchronized
+        fun waited(millis: Long) {
+            count++
+            waitMillis += millis
+            maxWaitMillis = Math.max(maxWaitMillis, millis)
+        }
+
+        @Synchronized
+        fun ran(millis: Long) {
+            runMillis += millis
+        }
+
+        @Synchronized
+        override fun toString(): String {
+            val n = count.coerceAtLeast(1)
+            return count.toString() + " runs, avg wait " + waitMillis / n + " ms" +
+                " (max " + maxWaitMillis + " ms), avg run " + runMillis / n + " ms"
+        }
+
+    }
+
+}
@@ -3,39 +3,173 @@ package de.xikolo.network.jobs.base
 import de.xikolo.App
 import de.xikolo.managers.UserManager
 import de.xikolo.utils.extensions.isOnline
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineStart
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.DisposableHandle
 import kotlinx.coroutines.GlobalScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.launch
+import java.io.IOException
 
 abstract class NetworkJob(private val networkState: NetworkStateLiveData, private val userRequest: Boolean, private vararg val preconditions: Precondition) {
 
+    companion object {
+        // the requests in flight by request key, also guards the callers of all requests
+        private val inFlight = HashMap<String, Request>()
+
+        private const val MAX_ATTEMPTS = 3
+    }
+
+    /**
+     * Jobs whose calls have a stale-if-error cache policy may still run while offline, to sync
+     * the last good response from the cache. Only [NetworkCode.NO_NETWORK] is reported then.
+     */
+    protected open val servesCacheWhenOffline = false
+
+    /**
+     * Identifies the request of a job. A job is not run again while another one with the same key
+     * is in flight, it joins that one and gets its outcome instead. Null for jobs which always
+     * have to run, e.g. because they change data. Only jobs with a key are retried.
+     */
+    protected open val requestKey: String? = null
+
+    @Volatile
+    private var request: Request? = null
+
     fun run() {
         if (preconditions.contains(Precondition.AUTH) && !UserManager.isAuthorized) {
             networkState.state(NetworkCode.NO_AUTH, userRequest)
             return
         }
 
-        if (!App.instance.isOnline) {
+        val offline = !App.instance.isOnline
+        if (offline) {
             networkState.state(NetworkCode.NO_NETWORK, userRequest)
-            return
+            if (!servesCacheWhenOffline) {
+                return
+            }
         }
 
-        GlobalScope.launch(Dispatchers.IO) {
-            try {
-                networkState.state(NetworkCode.STARTED, userRequest)
-                onRun()
-            } catch (e: Throwable) {
-                networkState.state(NetworkCode.ERROR, userRequest)
+        // an offline caller has got its outcome already
+        val caller = if (offline) null else Caller(networkState, userRequest)
+
+        val request: Request
+        synchronized(inFlight) {
+            val joined = requestKey?.let { inFlight[it] }
+            if (joined != null) {
+                caller?.let {
+                    attach(joined, it)
+                    it.state(NetworkCode.STARTED)
+                }
+                return
             }
+
+            request = Request(requestKey)
+            requestKey?.let { inFlight[it] = request }
+            this.request = request
+
+            // started once all callers are attached, so the job can be cancelled by them
+            request.job = GlobalScope.launch(Dispatchers.IO, CoroutineStart.LAZY) {
+                try {
+                    caller?.state(NetworkCode.STARTED)
+                    runAttempts()
+                } catch (e: CancellationException) {
+                    throw e
+                } catch (e: Throwable) {
+                    finish(NetworkCode.ERROR)
+                }
+            }
+            request.job?.invokeOnCompletion { finish(null) }
+            caller?.let { attach(request, it) }
         }
+        request.job?.start()
     }
 
-    fun success() = networkState.success(userRequest)
+    fun success() = finish(NetworkCode.SUCCESS)
 
-    fun error() = networkState.error(userRequest)
+    fun error() = finish(NetworkCode.ERROR)
 
     protected abstract suspend fun onRun()
 
+    /**
+     * Retries requests which can be joined, i.e. reads, with jittered backoff on network errors.
+     * The slot of the executor is given up while backing off.
+     */
+    private suspend fun runAttempts() {
+        val attempts = if (requestKey != null) MAX_ATTEMPTS else 1
+        var attempt = 1
+        while (true) {
+            try {
+                JobExecutor.execute(javaClass.simpleName, userRequest) { onRun() }
+                return
+            } catch (e: IOException) {
+                if (attempt >= attempts || !App.instance.isOnline) {
+                    throw e
+                }
+                delay(JobExecutor.backoff(attempt))
+                attempt++
+            }
+        }
+    }
+
+    /**
+     * Cancels the request when the scopes of all its callers are cancelled, e.g. because their
+     * view models have been cleared.
+     */
+    private fun attach(request: Request, caller: Caller) {
+        request.callers.add(caller)
+        caller.handle = caller.networkState.scope.coroutineContext[Job]?.invokeOnCompletion {
+            synchronized(inFlight) {
+                if (request.callers.remove(caller) && request.callers.isEmpty() && !request.finished) {
+                    request.job?.cancel()
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports the outcome to all callers once, later calls have no effect.
+     */
+    private fun finish(code: NetworkCode?) {
+        val request = request ?: return
+
+        val notified: List<Caller>
+        synchronized(inFlight) {
+            if (request.finished) {
+                return
+            }
+            request.finished = true
+            request.key?.let { if (inFlight[it] === request) inFlight.remove(it) }
+            notified = request.callers.toList()
+            request.callers.clear()
+        }
+
+        notified.forEach { caller ->
+            caller.handle?.dispose()
+            code?.let { caller.state(it) }
+        }
+    }
+
+    private class Request(val key: String?) {
+
+        val callers = mutableListOf<Caller>()
+
+        var job: Job? = null
+
+        var finished = false
+
+    }
+
+    private class Caller(val networkState: NetworkStateLiveData, val userRequest: Boolean) {
+
+        var handle: DisposableHandle? = null
+
+        fun state(code: NetworkCode) = networkState.state(code, userRequest)
+
+    }
+
     enum class Precondition {
         AUTH
     }
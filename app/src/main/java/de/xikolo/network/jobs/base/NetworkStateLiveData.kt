@@ -2,8 +2,14 @@ package de.xikolo.network.jobs.base
 
 import de.xikolo.App
 import de.xikolo.states.base.LiveDataState
-
-open class NetworkStateLiveData : LiveDataState<NetworkState>() {
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.GlobalScope
+
+/**
+ * @param scope jobs reporting to this state are cancelled once it is cancelled and no other
+ * caller waits for their outcome
+ */
+open class NetworkStateLiveData(val scope: CoroutineScope = GlobalScope) : LiveDataState<NetworkState>() {
 
     fun success(userRequest: Boolean) {
         state(NetworkCode.SUCCESS, userRequest)
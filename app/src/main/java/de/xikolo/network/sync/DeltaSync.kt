@@ -0,0 +1,79 @@
+package de.xikolo.network.sync
+
+import com.squareup.moshi.JsonAdapter
+import com.squareup.moshi.Moshi
+import de.xikolo.config.Config
+import de.xikolo.storages.SyncMetadataStorage
+import io.realm.RealmModel
+import moe.banana.jsonapi2.Document
+
+/**
+ * Delta sync for list calls which send the watermark of their last sync as [PARAM_SINCE]. A
+ * server which supports it answers with the changed resources only and lists the deleted ones
+ * in the meta of the document:
+ *
+ *     "meta": { "watermark": "...", "delta": true, "deleted": ["<id>", ...] }
+ *
+ * Any other response is the complete collection and is synced as such. Without a watermark in
+ * the meta, the next call asks for the complete collection again.
+ */
+object DeltaSync {
+
+    const val PARAM_SINCE = "filter[since]"
+
+    private const val META_WATERMARK = "watermark"
+    private const val META_DELTA = "delta"
+    private const val META_DELETED = "deleted"
+
+    private val storage by lazy { SyncMetadataStorage() }
+
+    private val metaAdapter: JsonAdapter<Any> by lazy {
+        Moshi.Builder().build().adapter(Any::class.java)
+    }
+
+    /**
+     * Watermarks are only valid for the same local schema.
+     */
+    fun key(resourceType: String, filter: String? = null): String =
+        Config.REALM_SCHEMA_VERSION.toString() + "|" + resourceType + (filter?.let { "|$it" } ?: "")
+
+    fun since(key: String): String? = storage.getWatermark(key)
+
+    /**
+     * Stores the watermark of a response after its changes have been synced successfully.
+     */
+    fun commit(key: String, changes: Changes) {
+        storage.putWatermark(key, changes.watermark)
+    }
+
+    class Changes(val watermark: String?, val isDelta: Boolean, val deletedIds: Array<String>) {
+
+        /**
+         * Lets the sync upsert the changes and delete the tombstoned resources only, if the
+         * response is a delta. Otherwise the sync is left as it is.
+         */
+        fun <S : RealmModel> applyTo(sync: Sync<S>): Sync<S> =
+            if (isDelta) sync.applyDelta(deletedIds) else sync
+
+        companion object {
+
+            fun of(document: Document?): Changes {
+                val meta = document?.meta?.get(metaAdapter) as? Map<*, *>
+                return fromMeta(meta)
+            }
+
+            internal fun fromMeta(meta: Map<*, *>?): Changes {
+                val watermark = meta?.get(META_WATERMARK) as? String
+                val isDelta = watermark != null && meta?.get(META_DELTA) == true
+                val deletedIds = (meta?.get(META_DELETED) as? List<*>)
+                    ?.filterIsInstance<String>()
+                    ?.toTypedArray()
+                    ?: arrayOf()
+                return Changes(watermark, isDelta, deletedIds)
+            }
+
+        }
+
+    }
+
+}
@@ -26,31 +26,27 @@ abstract class Local<S : RealmModel> internal constructor(clazz: Class<S>) : Syn
 
         }
 
-        override fun run(): Array<out String> {
-            Realm.getDefaultInstance().use { realmInstance ->
-                realmInstance.executeTransaction { realm ->
-                    val deleteQuery = realm.where(clazz)
-                    if (ids.isNotEmpty()) {
-                        deleteQuery.oneOf("id", ids)
-                    }
-                    for (filter in filters) {
-                        deleteQuery.equalTo(filter.first, filter.second)
-                    }
-                    for (filter in inFilters) {
-                        deleteQuery.oneOf(filter.first, filter.second)
-                    }
-
-                    val results = deleteQuery.findAll()
-
-                    for (result in results) {
-                        beforeCommitCallback?.invoke(realm, result)
-                    }
-
-                    if (Config.DEBUG) Log.d(Sync.TAG, "DELETE: Deleted ${results.size} local resources from type ${clazz.simpleName}")
-
-                    results.deleteAllFromRealm()
-                }
+        override fun write(realm: Realm, included: Sync.IncludedModels): Array<out String> {
+            val deleteQuery = realm.where(clazz)
+            if (ids.isNotEmpty()) {
+                deleteQuery.oneOf("id", ids)
             }
+            for (filter in filters) {
+                deleteQuery.equalTo(filter.first, filter.second)
+            }
+            for (filter in inFilters) {
+                deleteQuery.oneOf(filter.first, filter.second)
+            }
+
+            val results = deleteQuery.findAll()
+
+            for (result in results) {
+                beforeCommitCallback?.invoke(realm, result)
+            }
+
+            if (Config.DEBUG) Log.d(Sync.TAG, "DELETE: Deleted ${results.size} local resources from type ${clazz.simpleName}")
+
+            results.deleteAllFromRealm()
 
             return ids
         }
@@ -75,31 +71,27 @@ abstract class Local<S : RealmModel> internal constructor(clazz: Class<S>) : Syn
 
         }
 
-        override fun run(): Array<out String> {
-            Realm.getDefaultInstance().use { realmInstance ->
-                realmInstance.executeTransaction { realm ->
-                    val updateQuery = realm.where(clazz)
-                    if (ids.isNotEmpty()) {
-                        updateQuery.oneOf("id", ids)
-                    }
-                    for (filter in filters) {
-                        updateQuery.equalTo(filter.first, filter.second)
-                    }
-                    for (filter in inFilters) {
-                        updateQuery.oneOf(filter.first, filter.second)
-                    }
-
-                    val results = updateQuery.findAll()
-
-                    for (result in results) {
-                        beforeCommitCallback?.invoke(realm, result)
-                    }
-
-                    realm.copyToRealmOrUpdate<S>(results)
-
-                    if (Config.DEBUG) Log.d(Sync.TAG, "UPDATE: Saved ${results.size} local resources from type ${clazz.simpleName}")
-                }
+        override fun write(realm: Realm, included: Sync.IncludedModels): Array<out String> {
+            val updateQuery = realm.where(clazz)
+            if (ids.isNotEmpty()) {
+                updateQuery.oneOf("id", ids)
             }
+            for (filter in filters) {
+                updateQuery.equalTo(filter.first, filter.second)
+            }
+            for (filter in inFilters) {
+                updateQuery.oneOf(filter.first, filter.second)
+            }
+
+            val results = updateQuery.findAll()
+
+            for (result in results) {
+                beforeCommitCallback?.invoke(realm, result)
+            }
+
+            realm.copyToRealmOrUpdate<S>(results)
+
+            if (Config.DEBUG) Log.d(Sync.TAG, "UPDATE: Saved ${results.size} local resources from type ${clazz.simpleName}")
 
             return ids
         }
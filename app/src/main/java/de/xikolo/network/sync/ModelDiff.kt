@@ -0,0 +1,70 @@
+package de.xikolo.network.sync
+
+import io.realm.RealmModel
+import io.realm.RealmObject
+import io.realm.annotations.Ignore
+import io.realm.annotations.LinkingObjects
+import java.lang.reflect.Field
+import java.lang.reflect.Modifier
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Compares unmanaged models by their persisted fields, e.g. a model converted from a response
+ * with a copy of the local one.
+ */
+internal object ModelDiff {
+
+    private val fields = ConcurrentHashMap<Class<*>, List<Field>>()
+
+    fun isEqual(a: Any?, b: Any?): Boolean {
+        if (a === b) return true
+        if (a == null || b == null || a.javaClass != b.javaClass) return false
+
+        return when (a) {
+            is RealmModel -> fieldsOf(a.javaClass).all { isEqual(it.get(a), it.get(b)) }
+            is List<*> -> {
+                val other = b as List<*>
+                a.size == other.size && a.indices.all { isEqual(a[it], other[it]) }
+            }
+            is ByteArray -> a.contentEquals(b as ByteArray)
+            else -> a == b
+        }
+    }
+
+    /**
+     * Copies the given fields, e.g. ones which are only set locally, from one model to the other.
+     */
+    fun copyFields(from: RealmModel, to: RealmModel, fieldNames: Array<out String>) {
+        if (fieldNames.isEmpty()) return
+
+        val persisted = fieldsOf(to.javaClass)
+        for (name in fieldNames) {
+            val field = persisted.firstOrNull { it.name == name }
+                ?: throw IllegalArgumentException("${to.javaClass.simpleName} has no persisted field $name")
+            field.set(to, field.get(from))
+        }
+    }
+
+    fun idOf(model: RealmModel): String? =
+        fieldsOf(model.javaClass).firstOrNull { it.name == "id" }?.get(model) as String?
+
+    private fun fieldsOf(clazz: Class<*>): List<Field> = fields.getOrPut(clazz) {
+        val list = ArrayList<Field>()
+        var current: Class<*>? = clazz
+        while (current != null && current != RealmObject::class.java && current != Any::class.java) {
+            current.declaredFields
+                .filter {
+                    !it.isSynthetic && !Modifier.isStatic(it.modifiers) && !Modifier.isTransient(it.modifiers) &&
+                        !it.isAnnotationPresent(Ignore::class.java) &&
+                        !it.isAnnotationPresent(LinkingObjects::class.java)
+                }
+                .forEach {
+                    it.isAccessible = true
+                    list.add(it)
+                }
+            current = current.superclass
+        }
+        list
+    }
+
+}
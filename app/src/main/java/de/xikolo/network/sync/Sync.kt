@@ -24,6 +24,24 @@ abstract class Sync<S : RealmModel> internal constructor(internal var clazz: Cla
 
     internal var handleDeletes: Boolean = true
 
+    internal var deletedIds: Array<out String>? = null
+
+    internal var onlyChanged: Boolean = false
+
+    internal var localFields: Array<out String> = arrayOf()
+
+    /**
+     * Number of resources written by the last run.
+     */
+    var written: Int = 0
+        private set
+
+    /**
+     * Number of resources which were equal to the local ones and not written by the last run.
+     */
+    var unchanged: Int = 0
+        private set
+
     fun addFilter(fieldName: String, value: String): Sync<S> {
         this.filters.add(Pair(fieldName, value))
         return this
@@ -47,7 +65,113 @@ abstract class Sync<S : RealmModel> internal constructor(internal var clazz: Cla
         return this
     }
 
-    abstract fun run(): Array<out String>
+    /**
+     * Sync resources as changes since a previous sync, only the given resources are deleted
+     */
+    fun applyDelta(deletedIds: Array<out String>): Sync<S> {
+        this.handleDeletes = false
+        this.deletedIds = deletedIds
+        return this
+    }
+
+    /**
+     * Sync resources by writing only the ones which differ from the local ones, so listeners are
+     * not notified of unchanged resources
+     */
+    fun onlyChanged(): Sync<S> {
+        this.onlyChanged = true
+        return this
+    }
+
+    /**
+     * Keep the values of the given fields of existing local resources, e.g. of fields which are
+     * only set locally or not requested, adds to the fields given before
+     */
+    fun keepLocal(vararg fieldNames: String): Sync<S> {
+        this.localFields = arrayOf(*localFields, *fieldNames)
+        return this
+    }
+
+    fun run(): Array<out String> {
+        var ids: Array<out String> = arrayOf()
+        Realm.getDefaultInstance().use { realmInstance ->
+            realmInstance.executeTransaction { realm ->
+                ids = write(realm, IncludedModels())
+            }
+        }
+        return ids
+    }
+
+    /**
+     * Writes the resources and handles the deletes within the given transaction.
+     *
+     * @return the ids of the synced resources
+     */
+    internal abstract fun write(realm: Realm, included: IncludedModels): Array<out String>
+
+    /**
+     * Writes the models, the existing local ones are loaded with one query if needed.
+     */
+    internal fun upsert(realm: Realm, models: List<S>) {
+        written = 0
+        unchanged = 0
+
+        val local = if (onlyChanged || localFields.isNotEmpty()) {
+            val ids = models.mapNotNull { ModelDiff.idOf(it) }.toTypedArray()
+            if (ids.isNotEmpty()) {
+                realm.copyFromRealm(realm.where(clazz).oneOf("id", ids).findAll())
+                    .associateBy { ModelDiff.idOf(it) }
+            } else {
+                emptyMap()
+            }
+        } else {
+            emptyMap()
+        }
+
+        for (model in models) {
+            val localModel = local[ModelDiff.idOf(model)]
+            if (localModel != null) ModelDiff.copyFields(localModel, model, localFields)
+            beforeCommitCallback?.invoke(realm, model)
+
+            if (onlyChanged && ModelDiff.isEqual(localModel, model)) {
+                unchanged++
+            } else {
+                realm.copyToRealmOrUpdate(model)
+                written++
+            }
+        }
+    }
+
+    internal fun delete(realm: Realm, ids: List<String>, label: String) {
+        if (handleDeletes) {
+            val deleteQuery = realm.where(clazz)
+            if (ids.isNotEmpty()) {
+                deleteQuery.not().oneOf("id", ids.toTypedArray())
+            }
+            for (filter in filters) {
+                deleteQuery.equalTo(filter.first, filter.second)
+            }
+            for (filter in inFilters) {
+                deleteQuery.oneOf(filter.first, filter.second)
+            }
+            val results = deleteQuery.findAll()
+
+            if (Config.DEBUG) Log.d(TAG, "$label: Deleted ${results.size} local resources from type ${clazz.simpleName}")
+
+            results.deleteAllFromRealm()
+        } else if (deletedIds?.isNotEmpty() == true) {
+            val deleteQuery = realm.where(clazz)
+                .oneOf("id", deletedIds!!)
+            for (filter in filters) {
+                deleteQuery.equalTo(filter.first, filter.second)
+            }
+            val results = deleteQuery.findAll()
+
+            if (Config.DEBUG) Log.d(TAG, "$label: Deleted ${results.size} tombstoned local resources from type ${clazz.simpleName}")
+
+            results.deleteAllFromRealm()
+        } else if (Config.DEBUG) Log.d(TAG, "$label: Deleted 0 local resources from type ${clazz.simpleName}")
+    }
 
     class Data<S : RealmModel, T> private constructor(clazz: Class<S>, private val items: Array<T>) : Sync<S>(clazz)
             where T : Resource,
@@ -75,39 +199,13 @@ abstract class Sync<S : RealmModel> internal constructor(internal var clazz: Cla
 
         }
 
-        override fun run(): Array<out String> {
-            val ids = ArrayList<String>()
+        override fun write(realm: Realm, included: IncludedModels): Array<out String> {
+            upsert(realm, items.map { it.convertToRealmObject() })
+            val ids = items.map { it.id }
 
-            Realm.getDefaultInstance().use { realmInstance ->
-                realmInstance.executeTransaction { realm ->
-                    for (item in items) {
-                        val model = item.convertToRealmObject()
-                        beforeCommitCallback?.invoke(realm, model)
-                        realm.copyToRealmOrUpdate(model)
-                        ids.add(item.id)
-                    }
+            if (Config.DEBUG) Log.d(TAG, "DATA: Saved ${items.size} data resources from type ${clazz.simpleName}, written $written, unchanged $unchanged")
 
-                    if (Config.DEBUG) Log.d(TAG, "DATA: Saved ${items.size} data resources from type ${clazz.simpleName}")
-
-                    if (handleDeletes) {
-                        val deleteQuery = realm.where(clazz)
-                        if (ids.size > 0) {
-                            deleteQuery.not().oneOf("id", ids.toTypedArray())
-                        }
-                        for (filter in filters) {
-                            deleteQuery.equalTo(filter.first, filter.second)
-                        }
-                        for (filter in inFilters) {
-                            deleteQuery.oneOf(filter.first, filter.second)
-                        }
-                        val results = deleteQuery.findAll()
-
-                        if (Config.DEBUG) Log.d(TAG, "DATA: Deleted ${results.size} local resources from type ${clazz.simpleName}")
-
-                        results.deleteAllFromRealm()
-                    } else if (Config.DEBUG) Log.d(TAG, "DATA: Deleted 0 local resources from type ${clazz.simpleName}")
-                }
-            }
+            delete(realm, ids, "DATA")
 
             return ids.toTypedArray()
         }
@@ -136,49 +234,74 @@ abstract class Sync<S : RealmModel> internal constructor(internal var clazz: Cla
 
         }
 
-        override fun run(): Array<out String> {
+        override fun write(realm: Realm, included: IncludedModels): Array<out String> {
             if (document == null) return arrayOf()
 
-            val ids = ArrayList<String>()
+            val resources = included.of(document, clazz)
+            upsert(realm, resources.map { it.second })
+            val ids = resources.map { it.first }
+
+            if (Config.DEBUG) Log.d(TAG, "INCLUDED: Saved ${ids.size} included resources from type ${clazz.simpleName}, written $written, unchanged $unchanged")
+
+            delete(realm, ids, "INCLUDED")
+
+            return ids.toTypedArray()
+        }
+
+    }
+
+    /**
+     * Runs several syncs in a single transaction, so observers see all their changes at once.
+     * The included resources of a document are converted only once for all syncs.
+     */
+    class Batch private constructor(private val syncs: Array<out Sync<*>>) {
+
+        companion object {
 
+            fun of(vararg syncs: Sync<*>): Batch {
+                return Batch(syncs)
+            }
+
+        }
+
+        fun run() {
             Realm.getDefaultInstance().use { realmInstance ->
                 realmInstance.executeTransaction { realm ->
-                    for (resource in document.included) {
-                        if (resource is RealmAdapter<*>) {
-                            val adapter = resource as RealmAdapter<*>
-                            val model = adapter.convertToRealmObject()
-                            if (model.javaClass == clazz) {
-                                @Suppress("UNCHECKED_CAST")
-                                beforeCommitCallback?.invoke(realm, model as S)
-                                realm.copyToRealmOrUpdate(model)
-                                ids.add(resource.id)
-                            }
-                        }
+                    val included = IncludedModels()
+                    for (sync in syncs) {
+                        sync.write(realm, included)
                     }
 
-                    if (Config.DEBUG) Log.d(TAG, "INCLUDED: Saved ${ids.size} included resources from type ${clazz.simpleName}")
-
-                    if (handleDeletes) {
-                        val deleteQuery = realm.where(clazz)
-                        if (ids.size > 0) {
-                            deleteQuery.not().oneOf("id", ids.toTypedArray())
-                        }
-                        for (filter in filters) {
-                            deleteQuery.equalTo(filter.first, filter.second)
-                        }
-                        for (filter in inFilters) {
-                            deleteQuery.oneOf(filter.first, filter.second)
-                        }
-                        val results = deleteQuery.findAll()
-
-                        if (Config.DEBUG) Log.d(TAG, "INCLUDED: Deleted ${results.size} local resources from type ${clazz.simpleName}")
-
-                        results.deleteAllFromRealm()
-                    } else if (Config.DEBUG) Log.d(TAG, "INCLUDED: Deleted 0 local resources from type ${clazz.simpleName}")
+                    if (Config.DEBUG) Log.d(TAG, "BATCH: Committed ${syncs.size} syncs in one transaction")
                 }
             }
+        }
 
-            return ids.toTypedArray()
+    }
+
+    /**
+     * The realm models of the included resources by document and type, each resource is converted
+     * once in a single pass over the document.
+     */
+    internal class IncludedModels {
+
+        private val byDocument = IdentityHashMap<Document, Map<Class<*>, List<Pair<String, RealmModel>>>>()
+
+        fun <S : RealmModel> of(document: Document, clazz: Class<S>): List<Pair<String, S>> {
+            val grouped = byDocument.getOrPut(document) { group(document) }
+            @Suppress("UNCHECKED_CAST")
+            return grouped[clazz].orEmpty() as List<Pair<String, S>>
+        }
+
+        private fun group(document: Document): Map<Class<*>, List<Pair<String, RealmModel>>> {
+            val grouped = HashMap<Class<*>, MutableList<Pair<String, RealmModel>>>()
+            for (resource in document.included) {
+                if (resource is RealmAdapter<*>) {
+                    val model = (resource as RealmAdapter<*>).convertToRealmObject()
+                    grouped.getOrPut(model.javaClass) { ArrayList() }.add(Pair(resource.id, model))
+                }
+            }
+            return grouped
         }
 
     }
@@ -11,10 +11,9 @@ import com.coolerfall.download.OkHttpDownloader
 import de.xikolo.App
 import de.xikolo.config.Config
 import de.xikolo.models.Download
-import de.xikolo.network.ApiService
+import de.xikolo.network.HttpTransport
 import de.xikolo.storages.ApplicationPreferences
 import de.xikolo.utils.NotificationUtil
-import okhttp3.OkHttpClient
 import java.io.File
 import java.util.*
 import java.util.concurrent.ConcurrentHashMap
@@ -75,14 +74,9 @@ class DownloadService : Service() {
 
         notificationUtil = NotificationUtil(this)
 
-        // Don't use HttpLoggingInterceptor, crashes with OutOfMemoryException!
-        val client = OkHttpClient.Builder()
-            .addInterceptor(ApiService.authenticationInterceptor)
-            .addInterceptor(ApiService.userAgentInterceptor)
-            .build()
         downloadClient = DownloadManager.Builder()
             .context(this)
-            .downloader(OkHttpDownloader.create(client))
+            .downloader(OkHttpDownloader.create(HttpTransport.downloadClient))
             .build()
 
         downloadMap = ConcurrentHashMap()
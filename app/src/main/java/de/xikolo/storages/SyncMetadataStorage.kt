@@ -0,0 +1,21 @@
+package de.xikolo.storages
+
+import android.content.Context
+import de.xikolo.storages.base.BaseStorage
+
+/**
+ * Keeps the watermarks of the last synced changes, per resource type and filter.
+ */
+class SyncMetadataStorage : BaseStorage(PREF_SYNC_METADATA, Context.MODE_PRIVATE) {
+
+    fun getWatermark(key: String): String? = getString(key)
+
+    fun putWatermark(key: String, watermark: String?) {
+        putString(key, watermark)
+    }
+
+    companion object {
+        private const val PREF_SYNC_METADATA = "pref_sync_metadata"
+    }
+
+}
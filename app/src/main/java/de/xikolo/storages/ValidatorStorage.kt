@@ -0,0 +1,43 @@
+package de.xikolo.storages
+
+import android.content.Context
+import de.xikolo.storages.base.BaseStorage
+
+/**
+ * Keeps the cache validators of responses whose data has been synced, per request.
+ */
+class ValidatorStorage : BaseStorage(PREF_VALIDATORS, Context.MODE_PRIVATE) {
+
+    fun get(key: String): Validators? = Validators.decode(getString(key))
+
+    fun put(key: String, validators: Validators) {
+        putString(key, validators.encode())
+    }
+
+    data class Validators(val etag: String?, val lastModified: String?, val size: Long) {
+
+        fun encode(): String = listOf(etag.orEmpty(), lastModified.orEmpty(), size.toString()).joinToString(SEPARATOR)
+
+        companion object {
+            private const val SEPARATOR = "\t"
+
+            fun decode(value: String?): Validators? {
+                val parts = value?.split(SEPARATOR) ?: return null
+                if (parts.size != 3) {
+                    return null
+                }
+                return Validators(
+                    parts[0].ifEmpty { null },
+                    parts[1].ifEmpty { null },
+                    parts[2].toLongOrNull() ?: 0
+                )
+            }
+        }
+
+    }
+
+    companion object {
+        private const val PREF_VALIDATORS = "pref_validators"
+    }
+
+}
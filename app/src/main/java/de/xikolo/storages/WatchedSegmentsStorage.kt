@@ -0,0 +1,24 @@
+package de.xikolo.storages
+
+import android.content.Context
+import de.xikolo.storages.base.BaseStorage
+import de.xikolo.utils.WatchedSegments
+
+/**
+ * Keeps the watched segments per video, independent of the synced video data.
+ */
+class WatchedSegmentsStorage : BaseStorage(PREF_WATCHED_SEGMENTS, Context.MODE_PRIVATE) {
+
+    fun get(videoId: String): WatchedSegments = WatchedSegments.decode(getString(videoId))
+
+    fun put(videoId: String, segments: WatchedSegments) {
+        putString(videoId, segments.encode())
+    }
+
+    fun getWatchedFraction(videoId: String, durationMillis: Long): Float = get(videoId).watchedFraction(durationMillis)
+
+    companion object {
+        private const val PREF_WATCHED_SEGMENTS = "pref_watched_segments"
+    }
+
+}
@@ -0,0 +1,86 @@
+package de.xikolo.utils
+
+import android.os.Handler
+import android.os.Looper
+import de.xikolo.lanalytics.Lanalytics
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Merges bursts of similar analytics events, e.g. a chain of seeks while scrubbing, into a single
+ * event before it is persisted. Events are merged while they have the same kind and resource.
+ * The pending event is passed on when a different event arrives, when [flush] is called, e.g. on
+ * pause, or when no further event arrived within [windowMillis].
+ * Not thread-safe, all calls are expected on the main thread.
+ */
+class EventCoalescer(
+    var windowMillis: Long = DEFAULT_WINDOW_MILLIS,
+    private val scheduler: Scheduler = HandlerScheduler(),
+    private val emit: (Lanalytics.Event.Builder) -> Unit
+) {
+
+    companion object {
+        const val DEFAULT_WINDOW_MILLIS = 3000L
+    }
+
+    interface Scheduler {
+        fun schedule(task: Runnable, delayMillis: Long)
+        fun cancel(task: Runnable)
+    }
+
+    private class HandlerScheduler : Scheduler {
+        private val handler = Handler(Looper.getMainLooper())
+
+        override fun schedule(task: Runnable, delayMillis: Long) {
+            handler.postDelayed(task, delayMillis)
+        }
+
+        override fun cancel(task: Runnable) {
+            handler.removeCallbacks(task)
+        }
+    }
+
+    private class Pending(val kind: String, val resourceId: String, val builder: Lanalytics.Event.Builder)
+
+    private var pending: Pending? = null
+
+    private val timeout = Runnable { flush() }
+
+    /**
+     * Number of events offered, i.e. before coalescing.
+     */
+    val emittedCount = AtomicLong()
+
+    /**
+     * Number of events passed on to persistence.
+     */
+    val persistedCount = AtomicLong()
+
+    /**
+     * @param create builds the event if there is nothing to merge with, its timestamp is kept
+     * @param merge updates the pending event with the values of the new one
+     */
+    fun offer(kind: String, resourceId: String, create: () -> Lanalytics.Event.Builder, merge: Lanalytics.Event.Builder.() -> Unit) {
+        emittedCount.incrementAndGet()
+
+        val current = pending
+        if (current != null && current.kind == kind && current.resourceId == resourceId) {
+            current.builder.merge()
+        } else {
+            flush()
+            pending = Pending(kind, resourceId, create())
+        }
+
+        scheduler.cancel(timeout)
+        scheduler.schedule(timeout, windowMillis)
+    }
+
+    fun flush() {
+        val current = pending ?: return
+        pending = null
+        scheduler.cancel(timeout)
+
+        persistedCount.incrementAndGet()
+        emit(current.builder)
+    }
+
+}
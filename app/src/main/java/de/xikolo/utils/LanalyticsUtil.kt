@@ -4,6 +4,7 @@ import android.content.res.Configuration
 import android.util.Log
 import com.google.gson.Gson
 import de.xikolo.App
+import de.xikolo.R
 import de.xikolo.config.Config
 import de.xikolo.lanalytics.Lanalytics
 import de.xikolo.managers.UserManager
@@ -39,6 +40,10 @@ object LanalyticsUtil {
     @JvmField val CONTEXT_NEW_SOURCE = "new_source"
     @JvmField val CONTEXT_CONTENT_TYPE = "content_type"
 
+    @JvmField val RESULT_SEGMENTS = "segments"
+    @JvmField val RESULT_WATCHED = "watched"
+    @JvmField val RESULT_DURATION = "duration"
+
     @JvmStatic
     val contextDataJson: String
         get() {
@@ -51,29 +56,63 @@ object LanalyticsUtil {
             return gson.toJson(contextData)
         }
 
+    /**
+     * Summary of the analytics pipeline, e.g. for support tickets. Reads from the database, so it
+     * must not be called on the main thread.
+     */
+    @JvmStatic
+    val metricsSummary: String
+        get() = App.instance.lanalytics.metrics.toString()
+
     // Video Events
 
+    /**
+     * Merges seek chains and repeated speed changes, the resulting events are tracked on pause,
+     * on any other video event and after the coalescing window.
+     */
+    @JvmStatic
+    val videoEventCoalescer by lazy {
+        EventCoalescer { it.build().track() }
+    }
+
+    @JvmStatic
+    fun flushVideoEvents() {
+        videoEventCoalescer.flush()
+    }
+
     private fun createVideoEventBuilder(videoId: String, courseId: String, sectionId: String,
                                         currentTime: Int?, currentSpeed: Float?, currentOrientation: Int?, quality: String?, source: String?): Lanalytics.Event.Builder {
-        val builder = createEventBuilder()
+        return createEventBuilder()
                 .setResource(videoId, "video")
                 .putContext(CONTEXT_COURSE_ID, courseId)
                 .putContext(CONTEXT_SECTION_ID, sectionId)
+                .putVideoContext(currentTime, currentSpeed, currentOrientation, quality, source)
+    }
 
-        currentTime?.let { builder.putContext(CONTEXT_CURRENT_TIME, formatTime(currentTime)) }
-        currentSpeed?.let { builder.putContext(CONTEXT_CURRENT_SPEED, currentSpeed.toString()) }
+    private fun Lanalytics.Event.Builder.putVideoContext(currentTime: Int?, currentSpeed: Float?, currentOrientation: Int?, quality: String?, source: String?): Lanalytics.Event.Builder {
+        currentTime?.let { putContext(CONTEXT_CURRENT_TIME, formatTime(currentTime)) }
+        currentSpeed?.let { putContext(CONTEXT_CURRENT_SPEED, currentSpeed.toString()) }
         currentOrientation?.let {
-            builder.putContext(CONTEXT_CURRENT_ORIENTATION, if (currentOrientation == Configuration.ORIENTATION_PORTRAIT) CONTEXT_PORTRAIT else CONTEXT_LANDSCAPE)
+            putContext(CONTEXT_CURRENT_ORIENTATION, if (currentOrientation == Configuration.ORIENTATION_PORTRAIT) CONTEXT_PORTRAIT else CONTEXT_LANDSCAPE)
         }
-        quality?.let { builder.putContext(CONTEXT_QUALITY, quality) }
-        source?.let { builder.putContext(CONTEXT_SOURCE, source) }
+        quality?.let { putContext(CONTEXT_QUALITY, quality) }
+        source?.let { putContext(CONTEXT_SOURCE, source) }
 
-        return builder
+        return this
     }
 
+    /**
+     * Whether play, pause and seek in the player are tracked in addition to VIDEO_WATCHED_SEGMENTS,
+     * casting is always tracked with the raw events.
+     */
+    @JvmStatic
+    val trackRawVideoEvents: Boolean
+        get() = App.instance.resources.getBoolean(R.bool.track_raw_video_events)
+
     @JvmStatic
     fun trackVideoPlay(videoId: String, courseId: String, sectionId: String,
                        currentTime: Int, currentSpeed: Float, currentOrientation: Int, quality: String, source: String) {
+        flushVideoEvents()
         createVideoEventBuilder(videoId, courseId, sectionId, currentTime, currentSpeed, currentOrientation, quality, source)
                 .setVerb("VIDEO_PLAY").build().track()
     }
@@ -81,6 +120,7 @@ object LanalyticsUtil {
     @JvmStatic
     fun trackVideoPause(videoId: String, courseId: String, sectionId: String,
                         currentTime: Int, currentSpeed: Float, currentOrientation: Int, quality: String, source: String) {
+        flushVideoEvents()
         createVideoEventBuilder(videoId, courseId, sectionId, currentTime, currentSpeed, currentOrientation, quality, source)
                 .setVerb("VIDEO_PAUSE").build().track()
     }
@@ -88,28 +128,39 @@ object LanalyticsUtil {
     @JvmStatic
     fun trackVideoChangeSpeed(videoId: String, courseId: String, sectionId: String,
                               currentTime: Int, oldSpeed: Float?, newSpeed: Float, currentOrientation: Int, quality: String, source: String) {
-        createVideoEventBuilder(videoId, courseId, sectionId, currentTime, null, currentOrientation, quality, source)
-                .setVerb("VIDEO_CHANGE_SPEED")
-                .putContext(CONTEXT_OLD_SPEED, oldSpeed.toString())
-                .putContext(CONTEXT_NEW_SPEED, newSpeed.toString())
-                .build()
-                .track()
+        videoEventCoalescer.offer("VIDEO_CHANGE_SPEED", videoId, {
+            createVideoEventBuilder(videoId, courseId, sectionId, currentTime, null, currentOrientation, quality, source)
+                    .setVerb("VIDEO_CHANGE_SPEED")
+                    .setPriority(Lanalytics.Event.Priority.LOW)
+                    .putContext(CONTEXT_OLD_SPEED, oldSpeed.toString())
+                    .putContext(CONTEXT_NEW_SPEED, newSpeed.toString())
+        }) {
+            // keeps the speed before the first change
+            putVideoContext(currentTime, null, currentOrientation, quality, source)
+            putContext(CONTEXT_NEW_SPEED, newSpeed.toString())
+        }
     }
 
     @JvmStatic
     fun trackVideoSeek(videoId: String, courseId: String, sectionId: String,
                        oldCurrentTime: Int, newCurrentTime: Int, currentSpeed: Float, currentOrientation: Int, quality: String, source: String) {
-        createVideoEventBuilder(videoId, courseId, sectionId, null, currentSpeed, currentOrientation, quality, source)
-                .setVerb("VIDEO_SEEK")
-                .putContext(CONTEXT_OLD_CURRENT_TIME, formatTime(oldCurrentTime))
-                .putContext(CONTEXT_NEW_CURRENT_TIME, formatTime(newCurrentTime))
-                .build()
-                .track()
+        videoEventCoalescer.offer("VIDEO_SEEK", videoId, {
+            createVideoEventBuilder(videoId, courseId, sectionId, null, currentSpeed, currentOrientation, quality, source)
+                    .setVerb("VIDEO_SEEK")
+                    .setPriority(Lanalytics.Event.Priority.LOW)
+                    .putContext(CONTEXT_OLD_CURRENT_TIME, formatTime(oldCurrentTime))
+                    .putContext(CONTEXT_NEW_CURRENT_TIME, formatTime(newCurrentTime))
+        }) {
+            // keeps the position before the first seek
+            putVideoContext(null, currentSpeed, currentOrientation, quality, source)
+            putContext(CONTEXT_NEW_CURRENT_TIME, formatTime(newCurrentTime))
+        }
     }
 
     @JvmStatic
     fun trackVideoChangeOrientation(videoId: String, courseId: String, sectionId: String,
                                     currentTime: Int, currentSpeed: Float, newOrientation: Int, quality: String, source: String) {
+        flushVideoEvents()
         createVideoEventBuilder(videoId, courseId, sectionId, currentTime, currentSpeed, null, quality, source)
                 .setVerb(if (newOrientation == Configuration.ORIENTATION_PORTRAIT) "VIDEO_PORTRAIT" else "VIDEO_LANDSCAPE")
                 .build()
@@ -119,6 +170,7 @@ object LanalyticsUtil {
     @JvmStatic
     fun trackVideoChangeQuality(videoId: String, courseId: String, sectionId: String,
                                 currentTime: Int, currentSpeed: Float, currentOrientation: Int, oldQuality: String, newQuality: String, oldSource: String, newSource: String) {
+        flushVideoEvents()
         createVideoEventBuilder(videoId, courseId, sectionId, currentTime, currentSpeed, currentOrientation, null, null)
                 .setVerb("VIDEO_CHANGE_QUALITY")
                 .putContext(CONTEXT_OLD_QUALITY, oldQuality)
@@ -129,6 +181,27 @@ object LanalyticsUtil {
                 .track()
     }
 
+    /**
+     * Summarizes everything watched of the video so far, segments are given in seconds.
+     */
+    @JvmStatic
+    fun trackVideoWatchedSegments(videoId: String, courseId: String, sectionId: String,
+                                  segments: WatchedSegments, duration: Int) {
+        createEventBuilder()
+                .setResource(videoId, "video")
+                .setVerb("VIDEO_WATCHED_SEGMENTS")
+                .setPriority(Lanalytics.Event.Priority.HIGH)
+                .putContext(CONTEXT_COURSE_ID, courseId)
+                .putContext(CONTEXT_SECTION_ID, sectionId)
+                .putResult(RESULT_SEGMENTS, segments.toList().joinToString(",") {
+                    formatTime(it.first.toInt()) + "-" + formatTime(it.second.toInt())
+                })
+                .putResult(RESULT_WATCHED, formatTime(segments.watchedMillis.toInt()))
+                .putResult(RESULT_DURATION, formatTime(duration))
+                .build()
+                .track()
+    }
+
     // Download Events
 
     @JvmStatic
@@ -145,6 +218,7 @@ object LanalyticsUtil {
         createEventBuilder()
             .setResource(itemDownloadAsset.item.id, "video")
             .setVerb(verb)
+            .setPriority(Lanalytics.Event.Priority.HIGH)
             .putContext(CONTEXT_COURSE_ID, itemDownloadAsset.course.id)
             .putContext(CONTEXT_SECTION_ID, itemDownloadAsset.item.section.id)
             .build()
@@ -156,6 +230,7 @@ object LanalyticsUtil {
         createEventBuilder()
                 .setResource(sectionId, "section")
                 .setVerb("DOWNLOADED_SECTION")
+                .setPriority(Lanalytics.Event.Priority.HIGH)
                 .putContext(CONTEXT_COURSE_ID, courseId)
                 .putContext(CONTEXT_HD_VIDEO, hdVideo.toString())
                 .putContext(CONTEXT_SD_VIDEO, sdVideo.toString())
@@ -171,6 +246,7 @@ object LanalyticsUtil {
         createEventBuilder()
                 .setResource(itemId, "item")
                 .setVerb("VISITED_ITEM")
+                .setPriority(Lanalytics.Event.Priority.HIGH)
                 .putContext(CONTEXT_COURSE_ID, courseId)
                 .putContext(CONTEXT_SECTION_ID, sectionId)
                 .putContext(CONTEXT_CONTENT_TYPE, contentType)
@@ -184,6 +260,7 @@ object LanalyticsUtil {
         createEventBuilder()
                 .setResource(courseId, "course")
                 .setVerb("VISITED_PINBOARD")
+                .setPriority(Lanalytics.Event.Priority.HIGH)
                 .setOnlyWifi(true)
                 .build()
                 .track()
@@ -194,6 +271,7 @@ object LanalyticsUtil {
         createEventBuilder()
                 .setResource(courseId, "course")
                 .setVerb("VISITED_PROGRESS")
+                .setPriority(Lanalytics.Event.Priority.HIGH)
                 .setOnlyWifi(true)
                 .build()
                 .track()
@@ -204,6 +282,7 @@ object LanalyticsUtil {
         createEventBuilder()
                 .setResource(courseId, "course")
                 .setVerb("VISITED_LEARNING_ROOMS")
+                .setPriority(Lanalytics.Event.Priority.HIGH)
                 .setOnlyWifi(true)
                 .build()
                 .track()
@@ -213,6 +292,7 @@ object LanalyticsUtil {
     fun trackVisitedAnnouncements(courseId: String?) {
         val builder = createEventBuilder()
                 .setVerb("VISITED_ANNOUNCEMENTS")
+                .setPriority(Lanalytics.Event.Priority.HIGH)
                 .setOnlyWifi(true)
 
         courseId?.let { builder.setResource(courseId, "course") }
@@ -225,6 +305,7 @@ object LanalyticsUtil {
         createEventBuilder()
                 .setResource(announcementId, "announcement")
                 .setVerb("VISITED_ANNOUNCEMENT_DETAIL")
+                .setPriority(Lanalytics.Event.Priority.HIGH)
                 .setOnlyWifi(true)
                 .build()
                 .track()
@@ -235,6 +316,7 @@ object LanalyticsUtil {
         createEventBuilder()
                 .setResource(courseId, "course")
                 .setVerb("VISITED_RECAP")
+                .setPriority(Lanalytics.Event.Priority.HIGH)
                 .setOnlyWifi(true)
                 .build()
                 .track()
@@ -244,6 +326,7 @@ object LanalyticsUtil {
     fun trackVisitedProfile() {
         createEventBuilder()
                 .setVerb("VISITED_PROFILE")
+                .setPriority(Lanalytics.Event.Priority.HIGH)
                 .setOnlyWifi(true)
                 .build()
                 .track()
@@ -253,6 +336,7 @@ object LanalyticsUtil {
     fun trackVisitedPreferences() {
         createEventBuilder()
                 .setVerb("VISITED_PREFERENCES")
+                .setPriority(Lanalytics.Event.Priority.HIGH)
                 .setOnlyWifi(true)
                 .build()
                 .track()
@@ -262,6 +346,7 @@ object LanalyticsUtil {
     fun trackVisitedDownloads() {
         createEventBuilder()
                 .setVerb("VISITED_DOWNLOADS")
+                .setPriority(Lanalytics.Event.Priority.HIGH)
                 .setOnlyWifi(true)
                 .build()
                 .track()
@@ -0,0 +1,92 @@
+package de.xikolo.utils
+
+/**
+ * Sorted set of disjoint watched ranges of a video in milliseconds. Overlapping ranges and ranges
+ * closer than [MERGE_GAP_MILLIS] are merged, so the set stays small however often a video is watched.
+ */
+class WatchedSegments private constructor(private val segments: MutableList<LongArray>) {
+
+    companion object {
+        const val MERGE_GAP_MILLIS = 1000L
+
+        private const val SEGMENT_SEPARATOR = ","
+        private const val BOUND_SEPARATOR = "-"
+
+        /**
+         * @param encoded the result of [encode], may be null or empty
+         */
+        fun decode(encoded: String?): WatchedSegments {
+            val segments = WatchedSegments()
+            encoded?.split(SEGMENT_SEPARATOR)?.forEach { segment ->
+                val bounds = segment.split(BOUND_SEPARATOR)
+                if (bounds.size == 2) {
+                    val start = bounds[0].toLongOrNull()
+                    val end = bounds[1].toLongOrNull()
+                    if (start != null && end != null) {
+                        segments.add(start, end)
+                    }
+                }
+            }
+            return segments
+        }
+    }
+
+    constructor() : this(mutableListOf())
+
+    val size: Int
+        get() = segments.size
+
+    val watchedMillis: Long
+        get() = segments.sumByLong { it[1] - it[0] }
+
+    fun add(start: Long, end: Long) {
+        if (end <= start) {
+            return
+        }
+
+        var mergedStart = start
+        var mergedEnd = end
+
+        // the first segment which does not end before the new one starts
+        var index = segments.indexOfFirst { it[1] + MERGE_GAP_MILLIS >= start }
+        if (index < 0) {
+            index = segments.size
+        }
+
+        while (index < segments.size && segments[index][0] <= end + MERGE_GAP_MILLIS) {
+            mergedStart = minOf(mergedStart, segments[index][0])
+            mergedEnd = maxOf(mergedEnd, segments[index][1])
+            segments.removeAt(index)
+        }
+
+        segments.add(index, longArrayOf(mergedStart, mergedEnd))
+    }
+
+    /**
+     * @return the watched share of the video between 0 and 1
+     */
+    fun watchedFraction(durationMillis: Long): Float {
+        if (durationMillis <= 0) {
+            return 0f
+        }
+        val watched = segments.sumByLong { minOf(it[1], durationMillis) - minOf(it[0], durationMillis) }
+        return watched.toFloat() / durationMillis
+    }
+
+    fun toList(): List<Pair<Long, Long>> = segments.map { Pair(it[0], it[1]) }
+
+    fun encode(): String = segments.joinToString(SEGMENT_SEPARATOR) { "${it[0]}$BOUND_SEPARATOR${it[1]}" }
+
+    override fun equals(other: Any?): Boolean = other is WatchedSegments && encode() == other.encode()
+
+    override fun hashCode(): Int = encode().hashCode()
+
+    private inline fun List<LongArray>.sumByLong(selector: (LongArray) -> Long): Long {
+        var sum = 0L
+        for (segment in this) {
+            sum += selector(segment)
+        }
+        return sum
+    }
+
+}
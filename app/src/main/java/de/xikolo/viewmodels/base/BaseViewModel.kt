@@ -3,6 +3,10 @@ package de.xikolo.viewmodels.base
 import androidx.lifecycle.ViewModel
 import de.xikolo.network.jobs.base.NetworkStateLiveData
 import io.realm.Realm
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
 
 abstract class BaseViewModel : ViewModel() {
 
@@ -12,8 +16,13 @@ abstract class BaseViewModel : ViewModel() {
         Realm.getDefaultInstance()
     }
 
+    /**
+     * Cancelled when the view model is cleared, together with the network jobs of its states.
+     */
+    val jobScope = CoroutineScope(SupervisorJob() + Dispatchers.Main)
+
     open val networkState: NetworkStateLiveData by lazy {
-        NetworkStateLiveData()
+        NetworkStateLiveData(jobScope)
     }
 
     open fun onCreate() {
@@ -28,6 +37,7 @@ abstract class BaseViewModel : ViewModel() {
     abstract fun onRefresh()
 
     override fun onCleared() {
+        jobScope.cancel()
         realm.close()
         super.onCleared()
     }
@@ -11,8 +11,8 @@ class TicketViewModel : BaseViewModel() {
 
     val courses = courseListDelegate.courses
 
-    fun send(title: String, report: String, topic: TicketTopic, mail: String? = null, courseId: String? = null) {
-        CreateTicketJob(title, report, topic.apiTitle, mail, courseId, networkState, true).run()
+    fun send(title: String, report: String, topic: TicketTopic, mail: String? = null, courseId: String? = null, attachAnalyticsMetrics: Boolean = false) {
+        CreateTicketJob(title, report, topic.apiTitle, mail, courseId, attachAnalyticsMetrics, networkState, true).run()
     }
 
     override fun onRefresh() {
@@ -11,7 +11,7 @@ class LoginViewModel : BaseViewModel() {
 
     val loginNetworkState: NetworkStateLiveData = networkState
     val profileNetworkState: NetworkStateLiveData by lazy {
-        NetworkStateLiveData()
+        NetworkStateLiveData(jobScope)
     }
 
     override fun onFirstCreate() {
@@ -112,7 +112,7 @@ class CourseListViewModel(private val filter: CourseListFilter) : BaseViewModel(
     }
 
     override fun onFirstCreate() {
-        channelListDelegate.requestChannels(NetworkStateLiveData(), false) // request channels to be available for course filtering by channel
+        channelListDelegate.requestChannels(NetworkStateLiveData(jobScope), false) // request channels to be available for course filtering by channel
         courseListDelegate.requestCourseList(networkState, false)
 
         if (filter == CourseListFilter.MY) {
@@ -31,12 +31,12 @@ class NavigationViewModel : BaseViewModel() {
 
     override fun onFirstCreate() {
         announcementListDelegate.requestAnnouncementList(networkState, false)
-        userDelegate.requestUserWithProfile(NetworkStateLiveData(), false)
+        userDelegate.requestUserWithProfile(NetworkStateLiveData(jobScope), false)
     }
 
     override fun onRefresh() {
         announcementListDelegate.requestAnnouncementList(networkState, true)
-        userDelegate.requestUserWithProfile(NetworkStateLiveData(), false)
+        userDelegate.requestUserWithProfile(NetworkStateLiveData(jobScope), false)
     }
 
 }
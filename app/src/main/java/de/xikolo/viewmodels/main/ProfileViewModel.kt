@@ -26,12 +26,12 @@ class ProfileViewModel : BaseViewModel() {
 
     override fun onFirstCreate() {
         userDelegate.requestUserWithProfile(networkState, false)
-        enrollmentDelegate.requestEnrollmentList(NetworkStateLiveData(), false)
+        enrollmentDelegate.requestEnrollmentList(NetworkStateLiveData(jobScope), false)
     }
 
     override fun onRefresh() {
         userDelegate.requestUserWithProfile(networkState, true)
-        enrollmentDelegate.requestEnrollmentList(NetworkStateLiveData(), true)
+        enrollmentDelegate.requestEnrollmentList(NetworkStateLiveData(jobScope), true)
     }
 
 }
@@ -33,12 +33,12 @@ class CourseItemsViewModel(courseId: String, sectionId: String) : BaseViewModel(
     }
 
     override fun onFirstCreate() {
-        courseDelegate.requestCourse(NetworkStateLiveData(), false)
+        courseDelegate.requestCourse(NetworkStateLiveData(jobScope), false)
         sectionDelegate.requestSectionListWithItems(networkState, false)
     }
 
     override fun onRefresh() {
-        courseDelegate.requestCourse(NetworkStateLiveData(), true)
+        courseDelegate.requestCourse(NetworkStateLiveData(jobScope), true)
         sectionDelegate.requestSectionListWithItems(networkState, true)
     }
 
@@ -0,0 +1,40 @@
+package de.xikolo.testing.unit
+
+import de.xikolo.network.sync.DeltaSync
+import org.junit.Assert.*
+import org.junit.Test
+
+class DeltaSyncTest {
+
+    @Test
+    fun testDeltaResponse() {
+        val changes = DeltaSync.Changes.fromMeta(
+            mapOf("watermark" to "2019-05-02T12:00:00.000+00:00", "delta" to true, "deleted" to listOf("a", "b"))
+        )
+        assertTrue(changes.isDelta)
+        assertEquals("2019-05-02T12:00:00.000+00:00", changes.watermark)
+        assertArrayEquals(arrayOf("a", "b"), changes.deletedIds)
+    }
+
+    @Test
+    fun testCompleteResponseWithWatermark() {
+        val changes = DeltaSync.Changes.fromMeta(mapOf("watermark" to "2019-05-01T12:00:00.000+00:00"))
+        assertFalse(changes.isDelta)
+        assertEquals("2019-05-01T12:00:00.000+00:00", changes.watermark)
+        assertEquals(0, changes.deletedIds.size)
+    }
+
+    @Test
+    fun testServerWithoutDeltaSupport() {
+        val changes = DeltaSync.Changes.fromMeta(null)
+        assertFalse(changes.isDelta)
+        assertNull(changes.watermark)
+    }
+
+    @Test
+    fun testDeltaWithoutWatermarkIsComplete() {
+        // without a watermark, the next sync could not continue from this one
+        assertFalse(DeltaSync.Changes.fromMeta(mapOf("delta" to true)).isDelta)
+    }
+
+}
@@ -0,0 +1,101 @@
+package de.xikolo.testing.unit
+
+import de.xikolo.lanalytics.Lanalytics
+import de.xikolo.utils.EventCoalescer
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+
+class EventCoalescerTest {
+
+    private class ManualScheduler : EventCoalescer.Scheduler {
+        var task: Runnable? = null
+
+        override fun schedule(task: Runnable, delayMillis: Long) {
+            this.task = task
+        }
+
+        override fun cancel(task: Runnable) {
+            if (this.task === task) {
+                this.task = null
+            }
+        }
+
+        fun fire() {
+            task?.let {
+                task = null
+                it.run()
+            }
+        }
+    }
+
+    private lateinit var scheduler: ManualScheduler
+
+    private lateinit var emitted: MutableList<Lanalytics.Event>
+
+    private lateinit var coalescer: EventCoalescer
+
+    @Before
+    fun setUp() {
+        scheduler = ManualScheduler()
+        emitted = mutableListOf()
+        coalescer = EventCoalescer(scheduler = scheduler) { emitted.add(it.build()) }
+    }
+
+    @Test
+    fun testSeekChainIsMerged() {
+        seek("video", 10, 20)
+        seek("video", 20, 30)
+        seek("video", 30, 40)
+        assertTrue(emitted.isEmpty())
+
+        scheduler.fire()
+        assertEquals(1, emitted.size)
+        assertEquals("10", emitted[0].context["old"])
+        assertEquals("40", emitted[0].context["new"])
+
+        assertEquals(3, coalescer.emittedCount.get())
+        assertEquals(1, coalescer.persistedCount.get())
+    }
+
+    @Test
+    fun testDifferentResourceFlushes() {
+        seek("video", 10, 20)
+        seek("other", 0, 5)
+        assertEquals(1, emitted.size)
+        assertEquals("video", emitted[0].resourceId)
+
+        coalescer.flush()
+        assertEquals(2, emitted.size)
+        assertEquals("other", emitted[1].resourceId)
+        assertNull(scheduler.task)
+    }
+
+    @Test
+    fun testDifferentKindFlushes() {
+        seek("video", 10, 20)
+        coalescer.offer("speed", "video", { createBuilder("video", "1.0", "1.5") }) {
+            putContext("new", "2.0")
+        }
+        assertEquals(1, emitted.size)
+
+        coalescer.flush()
+        coalescer.flush()
+        assertEquals(2, emitted.size)
+        assertEquals("2.0", emitted[1].context["new"])
+    }
+
+    private fun seek(resourceId: String, old: Int, new: Int) {
+        coalescer.offer("seek", resourceId, { createBuilder(resourceId, old.toString(), new.toString()) }) {
+            putContext("new", new.toString())
+        }
+    }
+
+    private fun createBuilder(resourceId: String, old: String, new: String): Lanalytics.Event.Builder {
+        return Lanalytics.Event.Builder.createEmptyBuilder()
+            .setResource(resourceId, "video")
+            .putContext("old", old)
+            .putContext("new", new)
+    }
+
+}
@@ -0,0 +1,64 @@
+package de.xikolo.testing.unit
+
+import de.xikolo.models.Video
+import de.xikolo.models.VideoStream
+import de.xikolo.models.VideoSubtitles
+import de.xikolo.network.sync.ModelDiff
+import org.junit.Assert.*
+import org.junit.Test
+
+class ModelDiffTest {
+
+    private fun video(hdUrl: String = "hd", language: String = "en"): Video {
+        val video = Video()
+        video.id = "video"
+        video.summary = "summary"
+        video.singleStream = VideoStream(hdUrl, "sd", "hls", 100, 50, "thumbnail")
+        video.subtitles.add(VideoSubtitles().apply { this.language = language })
+        return video
+    }
+
+    @Test
+    fun testEqualModels() {
+        assertTrue(ModelDiff.isEqual(video(), video()))
+    }
+
+    @Test
+    fun testChangedNestedObject() {
+        assertFalse(ModelDiff.isEqual(video(), video(hdUrl = "other")))
+    }
+
+    @Test
+    fun testChangedList() {
+        assertFalse(ModelDiff.isEqual(video(), video(language = "de")))
+
+        val more = video()
+        more.subtitles.add(VideoSubtitles())
+        assertFalse(ModelDiff.isEqual(video(), more))
+    }
+
+    @Test
+    fun testNewModel() {
+        assertFalse(ModelDiff.isEqual(null, video()))
+    }
+
+    @Test
+    fun testCopyLocalFields() {
+        val local = video()
+        local.progress = 42
+
+        val incoming = video()
+        assertFalse(ModelDiff.isEqual(local, incoming))
+
+        ModelDiff.copyFields(local, incoming, arrayOf("progress"))
+        assertEquals(42, incoming.progress)
+        assertTrue(ModelDiff.isEqual(local, incoming))
+        assertEquals("video", ModelDiff.idOf(incoming))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun testCopyUnknownField() {
+        ModelDiff.copyFields(video(), video(), arrayOf("unknown"))
+    }
+
+}
@@ -0,0 +1,32 @@
+package de.xikolo.testing.unit
+
+import de.xikolo.network.ApiServiceInterface
+import de.xikolo.network.PayloadStats
+import org.junit.Assert.*
+import org.junit.Test
+
+class PayloadStatsTest {
+
+    @Test
+    fun testEndpointWithoutQuery() {
+        assertEquals("course-dates", PayloadStats.endpoint("course-dates"))
+    }
+
+    @Test
+    fun testEndpointKeepsIncludesOnly() {
+        assertEquals(
+            "courses?include=user_enrollment",
+            PayloadStats.endpoint("courses?include=user_enrollment&fields[courses]=" + ApiServiceInterface.COURSE_LIST_FIELDS)
+        )
+        assertEquals("courses", PayloadStats.endpoint("courses?fields[courses]=title"))
+        assertEquals("announcements", PayloadStats.endpoint("announcements?filter[global]=true"))
+    }
+
+    @Test
+    fun testCourseListFieldsOmitDescription() {
+        val fields = ApiServiceInterface.COURSE_LIST_FIELDS.split(',')
+        assertFalse(fields.contains("description"))
+        assertTrue(fields.containsAll(listOf("user_enrollment", "channel")))
+    }
+
+}
@@ -0,0 +1,29 @@
+package de.xikolo.testing.unit
+
+import de.xikolo.storages.ValidatorStorage
+import org.junit.Assert.*
+import org.junit.Test
+
+class ValidatorsTest {
+
+    @Test
+    fun testEncodeDecode() {
+        val validators = ValidatorStorage.Validators("W/\"5d41402abc4b2a76\"", "Wed, 21 Oct 2020 07:28:00 GMT", 48213)
+        assertEquals(validators, ValidatorStorage.Validators.decode(validators.encode()))
+    }
+
+    @Test
+    fun testMissingValidatorsStayNull() {
+        val validators = ValidatorStorage.Validators("\"abc\"", null, 0)
+        val decoded = ValidatorStorage.Validators.decode(validators.encode())!!
+        assertEquals("\"abc\"", decoded.etag)
+        assertNull(decoded.lastModified)
+    }
+
+    @Test
+    fun testInvalidValueIsIgnored() {
+        assertNull(ValidatorStorage.Validators.decode(null))
+        assertNull(ValidatorStorage.Validators.decode("garbage"))
+    }
+
+}
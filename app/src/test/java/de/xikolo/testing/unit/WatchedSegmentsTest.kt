@@ -0,0 +1,65 @@
+package de.xikolo.testing.unit
+
+import de.xikolo.utils.WatchedSegments
+import org.junit.Assert.*
+import org.junit.Test
+
+class WatchedSegmentsTest {
+
+    @Test
+    fun testMerging() {
+        val segments = WatchedSegments()
+        segments.add(10000, 20000)
+        segments.add(40000, 50000)
+        assertEquals(2, segments.size)
+
+        // overlapping
+        segments.add(15000, 25000)
+        assertEquals(listOf(Pair(10000L, 25000L), Pair(40000L, 50000L)), segments.toList())
+
+        // adjacent within the merge gap
+        segments.add(25500, 39500)
+        assertEquals(listOf(Pair(10000L, 50000L)), segments.toList())
+
+        // contained
+        segments.add(12000, 13000)
+        assertEquals(1, segments.size)
+
+        // before all others
+        segments.add(0, 5000)
+        assertEquals(listOf(Pair(0L, 5000L), Pair(10000L, 50000L)), segments.toList())
+
+        // empty ranges are ignored
+        segments.add(60000, 60000)
+        assertEquals(2, segments.size)
+    }
+
+    @Test
+    fun testWatchedFraction() {
+        val segments = WatchedSegments()
+        segments.add(0, 30000)
+        segments.add(60000, 90000)
+        assertEquals(60000, segments.watchedMillis)
+        assertEquals(0.5f, segments.watchedFraction(120000), 0.0001f)
+        assertEquals(0f, segments.watchedFraction(0), 0.0001f)
+
+        // ranges beyond the duration do not count
+        assertEquals(1f, segments.watchedFraction(30000), 0.0001f)
+    }
+
+    @Test
+    fun testEncoding() {
+        val segments = WatchedSegments()
+        segments.add(0, 30000)
+        segments.add(60000, 90000)
+
+        val encoded = segments.encode()
+        assertEquals("0-30000,60000-90000", encoded)
+        assertEquals(segments, WatchedSegments.decode(encoded))
+
+        assertEquals(0, WatchedSegments.decode(null).size)
+        assertEquals(0, WatchedSegments.decode("").size)
+        assertEquals(1, WatchedSegments.decode("0-1000,broken").size)
+    }
+
+}
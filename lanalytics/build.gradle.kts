@@ -10,10 +10,16 @@ android {
     defaultConfig {
         minSdkVersion(Versions.MIN_SDK)
         targetSdkVersion(Versions.TARGET_SDK)
+
+        testInstrumentationRunner = "androidx.test.runner.AndroidJUnitRunner"
     }
     lintOptions {
         isAbortOnError = false
     }
+    testOptions {
+        // lets the pipeline run on the JVM, android.util.Log calls become no-ops
+        unitTests.isReturnDefaultValues = true
+    }
     compileOptions {
         sourceCompatibility = Versions.JAVA
         targetCompatibility = Versions.JAVA
@@ -26,4 +32,10 @@ android {
 dependencies {
     implementation(SharedDependencies.OK_HTTP)
     implementation(SharedDependencies.GSON)
+    implementation("androidx.work:work-runtime:2.3.4")
+
+    // testing
+    testImplementation("junit:junit:4.13")
+    testImplementation("com.squareup.okhttp3:mockwebserver:${Versions.OK_HTTP}")
+    androidTestImplementation("androidx.test:runner:1.2.0")
 }
@@ -0,0 +1,107 @@
+package de.xikolo.lanalytics;
+
+import android.content.Context;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.xikolo.lanalytics.database.DatabaseHelper;
+
+import static org.junit.Assert.assertSame;
+
+/**
+ * Reports the time and the allocations of a single track call, i.e. building a video event the
+ * way the player does and handing it to the tracker. Run it before and after changes to the
+ * event builder or the ingestion path.
+ */
+@LargeTest
+public class TrackBenchmarkTest {
+
+    private static final String TAG = TrackBenchmarkTest.class.getSimpleName();
+
+    private static final int WARMUP_ITERATIONS = 200;
+
+    private static final int ITERATIONS = 500;
+
+    private Context context;
+
+    private DatabaseHelper databaseHelper;
+
+    private Tracker tracker;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        databaseHelper = new DatabaseHelper(context);
+        databaseHelper.deleteDatabase();
+
+        tracker = new Tracker(context, "http://localhost/", databaseHelper);
+        // keep everything in memory, the benchmark is about the calling thread only
+        tracker.setFlushInterval(60 * 60 * 1000);
+        tracker.setMaxBatchSize(IngestionQueue.DEFAULT_CAPACITY);
+    }
+
+    @After
+    public void tearDown() {
+        tracker.discardPending();
+        tracker.stopSending();
+        databaseHelper.deleteDatabase();
+        databaseHelper.shutdown();
+    }
+
+    @Test
+    public void testTrackCost() {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            track(i);
+        }
+        tracker.discardPending();
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < ITERATIONS; i++) {
+            track(i);
+        }
+        long nanos = SystemClock.elapsedRealtimeNanos() - start;
+        int allocations = Debug.getThreadAllocCount();
+        int allocatedBytes = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+
+        Log.i(TAG, "track(): " + (nanos / ITERATIONS / 1000.0) + " us, "
+                + (allocations / ITERATIONS) + " allocations, "
+                + (allocatedBytes / ITERATIONS) + " bytes per call");
+    }
+
+    @Test
+    public void testDefaultContextIsShared() {
+        Lanalytics.Event first = createEvent(0);
+        Lanalytics.Event second = createEvent(1);
+        assertSame(first.defaultContext, second.defaultContext);
+    }
+
+    private void track(int i) {
+        tracker.send(createEvent(i), "token");
+    }
+
+    private Lanalytics.Event createEvent(int i) {
+        return new Lanalytics.Event.Builder(context)
+                .setUser("d5d7b0b4-6c1b-4a0e-9d55-6a0b3f1f4e21")
+                .setVerb("VIDEO_PLAY")
+                .setResource("9b7e0c6a-2f4e-4d8e-8f3a-1c2d3e4f5a6b", "video")
+                .putContext("course_id", "3f0e1d2c-4b5a-6978-8a9b-0c1d2e3f4a5b")
+                .putContext("section_id", "7a6b5c4d-3e2f-1a0b-9c8d-7e6f5a4b3c2d")
+                .putContext("current_time", String.valueOf(i))
+                .putContext("current_speed", "1.0")
+                .putContext("client_id", "8b5a1d3e-36a8-4a4c-9d0b-0a2f7e6e4b8c")
+                .build();
+    }
+
+}
@@ -0,0 +1,110 @@
+package de.xikolo.lanalytics.database;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import de.xikolo.lanalytics.Lanalytics;
+import de.xikolo.lanalytics.database.access.EventDataAccess;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@LargeTest
+public class EventAcknowledgeThroughputTest {
+
+    private static final String TAG = EventAcknowledgeThroughputTest.class.getSimpleName();
+
+    private static final int BACKLOG_SIZE = 10000;
+
+    private static final int UPLOAD_BATCH_SIZE = 50;
+
+    private DatabaseHelper databaseHelper;
+
+    private EventDataAccess eventDataAccess;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        databaseHelper = new DatabaseHelper(context);
+        databaseHelper.deleteDatabase();
+        eventDataAccess = (EventDataAccess) databaseHelper.getDataAccess(DatabaseHelper.DataAccessType.EVENT);
+    }
+
+    @After
+    public void tearDown() {
+        databaseHelper.deleteDatabase();
+    }
+
+    @Test
+    public void testBatchAcknowledgeOutperformsPerRowDelete() {
+        List<Lanalytics.Event> backlog = fillBacklog();
+        long start = SystemClock.elapsedRealtime();
+        for (Lanalytics.Event event : backlog) {
+            eventDataAccess.delete(event);
+        }
+        long perRowMillis = SystemClock.elapsedRealtime() - start;
+        assertEquals(0, eventDataAccess.getCount());
+
+        backlog = fillBacklog();
+        start = SystemClock.elapsedRealtime();
+        int deleted = 0;
+        for (int from = 0; from < backlog.size(); from += UPLOAD_BATCH_SIZE) {
+            List<String> ids = new ArrayList<>(UPLOAD_BATCH_SIZE);
+            for (Lanalytics.Event event : backlog.subList(from, Math.min(backlog.size(), from + UPLOAD_BATCH_SIZE))) {
+                ids.add(event.id);
+            }
+            deleted += eventDataAccess.acknowledge(ids);
+        }
+        long batchMillis = SystemClock.elapsedRealtime() - start;
+        assertEquals(BACKLOG_SIZE, deleted);
+        assertEquals(0, eventDataAccess.getCount());
+
+        Log.i(TAG, "Deleting " + BACKLOG_SIZE + " events: per row " + perRowMillis + " ms, "
+                + "batches of " + UPLOAD_BATCH_SIZE + " " + batchMillis + " ms");
+        assertTrue(batchMillis < perRowMillis);
+    }
+
+    @Test
+    public void testAcknowledgeSpansParameterLimit() {
+        List<Lanalytics.Event> backlog = fillBacklog();
+        List<String> ids = new ArrayList<>(backlog.size() + 1);
+        for (Lanalytics.Event event : backlog) {
+            ids.add(event.id);
+        }
+        ids.add(UUID.randomUUID().toString());
+
+        assertEquals(BACKLOG_SIZE, eventDataAccess.acknowledge(ids));
+        assertEquals(0, eventDataAccess.getCount());
+    }
+
+    private List<Lanalytics.Event> fillBacklog() {
+        List<Lanalytics.Event> backlog = new ArrayList<>(BACKLOG_SIZE);
+        for (int i = 0; i < BACKLOG_SIZE; i++) {
+            backlog.add(Lanalytics.Event.Builder.createEmptyBuilder()
+                    .setId(UUID.randomUUID().toString())
+                    .setUser(UUID.randomUUID().toString())
+                    .setVerb("VIDEO_PLAY")
+                    .setResource(UUID.randomUUID().toString(), "video")
+                    .putResult("current_time", String.valueOf(i))
+                    .putContext("platform", "Android")
+                    .setTimestamp("2020-06-01T12:00:00+02:00")
+                    .build());
+        }
+        eventDataAccess.addAll(backlog);
+        assertEquals(BACKLOG_SIZE, eventDataAccess.getCount());
+        return backlog;
+    }
+
+}
@@ -0,0 +1,162 @@
+package de.xikolo.lanalytics.database;
+
+import android.content.Context;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import de.xikolo.lanalytics.Lanalytics;
+import de.xikolo.lanalytics.database.access.EventDataAccess;
+import de.xikolo.lanalytics.parser.EventBatchWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EventEvictionTest {
+
+    private DatabaseHelper databaseHelper;
+
+    private EventDataAccess eventDataAccess;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        databaseHelper = new DatabaseHelper(context);
+        databaseHelper.deleteDatabase();
+        eventDataAccess = (EventDataAccess) databaseHelper.getDataAccess(DatabaseHelper.DataAccessType.EVENT);
+    }
+
+    @After
+    public void tearDown() {
+        databaseHelper.deleteDatabase();
+        databaseHelper.shutdown();
+    }
+
+    @Test
+    public void testLowPriorityEventsAreEvictedFirst() {
+        List<Lanalytics.Event> events = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            events.add(createEvent("VISITED_ITEM", Lanalytics.Event.Priority.HIGH));
+            events.add(createEvent("VIDEO_PLAY", Lanalytics.Event.Priority.NORMAL));
+            events.add(createEvent("VIDEO_SEEK", Lanalytics.Event.Priority.LOW));
+        }
+        eventDataAccess.addAll(events);
+
+        Map<String, Integer> evicted = eventDataAccess.evict(15, Long.MAX_VALUE);
+        assertEquals(Integer.valueOf(10), evicted.get("VIDEO_SEEK"));
+        assertEquals(Integer.valueOf(5), evicted.get("VIDEO_PLAY"));
+        assertEquals(15, eventDataAccess.getCount());
+
+        // high priority events are kept even above the limit
+        eventDataAccess.evict(5, Long.MAX_VALUE);
+        assertEquals(10, eventDataAccess.getCount());
+        for (Lanalytics.Event event : eventDataAccess.getAll()) {
+            assertEquals(Lanalytics.Event.Priority.HIGH, event.priority);
+        }
+
+        Map<String, Integer> dropped = eventDataAccess.getDroppedCounts();
+        assertEquals(Integer.valueOf(10), dropped.get("VIDEO_SEEK"));
+        assertEquals(Integer.valueOf(10), dropped.get("VIDEO_PLAY"));
+    }
+
+    @Test
+    public void testEvictionByBytes() {
+        List<Lanalytics.Event> events = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            events.add(createEvent("VIDEO_PLAY", Lanalytics.Event.Priority.NORMAL));
+        }
+        eventDataAccess.addAll(events);
+
+        eventDataAccess.evict(Integer.MAX_VALUE, 2000);
+        int count = eventDataAccess.getCount();
+        assertTrue(count > 0 && count < 100);
+    }
+
+    @Test
+    public void testDroppedCountsAreAttachedToHighPriorityEvent() {
+        List<Lanalytics.Event> events = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            events.add(createEvent("VIDEO_SEEK", Lanalytics.Event.Priority.LOW));
+        }
+        eventDataAccess.addAll(events);
+        eventDataAccess.evict(5, Long.MAX_VALUE);
+
+        // low priority events could be evicted themselves, so they do not carry the counts
+        eventDataAccess.addAll(Collections.singletonList(createEvent("VIDEO_PLAY", Lanalytics.Event.Priority.NORMAL)));
+        assertEquals(Integer.valueOf(5), eventDataAccess.getDroppedCounts().get("VIDEO_SEEK"));
+
+        Lanalytics.Event visit = createEvent("VISITED_ITEM", Lanalytics.Event.Priority.HIGH);
+        eventDataAccess.addAll(Collections.singletonList(visit));
+        assertTrue(eventDataAccess.getDroppedCounts().isEmpty());
+
+        Lanalytics.Event stored = null;
+        for (Lanalytics.Event event : eventDataAccess.getAll()) {
+            if (event.id.equals(visit.id)) {
+                stored = event;
+            } else {
+                assertNull(event.context.get(EventStore.CONTEXT_DROPPED_EVENTS));
+            }
+        }
+        assertNotNull(stored);
+        assertEquals("{\"VIDEO_SEEK\":5}", stored.context.get(EventStore.CONTEXT_DROPPED_EVENTS));
+
+        // evictions after the report are reported with the next one
+        eventDataAccess.evict(5, Long.MAX_VALUE);
+        assertEquals(Integer.valueOf(2), eventDataAccess.getDroppedCounts().get("VIDEO_SEEK"));
+    }
+
+    @Test
+    public void testOpenBatchIsNotWrittenAfterEviction() throws IOException {
+        List<Lanalytics.Event> events = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            events.add(createEvent("VIDEO_SEEK", Lanalytics.Event.Priority.LOW));
+        }
+        eventDataAccess.addAll(events);
+
+        EventBatch batch = eventDataAccess.openTop(10, false);
+        try {
+            assertEquals(10, batch.size());
+            assertTrue(batch.getEstimatedBytes() > 0);
+
+            EventBatchWriter.writeJsonApi(batch, new JsonWriter(new StringWriter()));
+
+            // the rows are only read when written, so the batch notices the eviction
+            eventDataAccess.evict(5, Long.MAX_VALUE);
+            try {
+                EventBatchWriter.writeJsonApi(batch, new JsonWriter(new StringWriter()));
+                fail("Batch written although events have been evicted");
+            } catch (IOException expected) {
+            }
+        } finally {
+            batch.close();
+        }
+    }
+
+    private static Lanalytics.Event createEvent(String verb, Lanalytics.Event.Priority priority) {
+        return Lanalytics.Event.Builder.createEmptyBuilder()
+                .setId(UUID.randomUUID().toString())
+                .setUser(UUID.randomUUID().toString())
+                .setVerb(verb)
+                .setResource(UUID.randomUUID().toString(), "video")
+                .setTimestamp("2020-06-01T12:00:00+02:00")
+                .setPriority(priority)
+                .build();
+    }
+
+}
@@ -0,0 +1,140 @@
+package de.xikolo.lanalytics.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import de.xikolo.lanalytics.Lanalytics;
+import de.xikolo.lanalytics.database.access.EventDataAccess;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Reports insert and drain throughput of the event store in ops/sec and its on-disk size per
+ * event, run it before and after changes to the storage layer.
+ */
+@LargeTest
+public class EventStoreThroughputTest {
+
+    private static final String TAG = EventStoreThroughputTest.class.getSimpleName();
+
+    private static final int BACKLOG_SIZE = 10000;
+
+    private static final int INSERT_BATCH_SIZE = 100;
+
+    private static final int UPLOAD_BATCH_SIZE = 50;
+
+    private DatabaseHelper databaseHelper;
+
+    private EventDataAccess eventDataAccess;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        databaseHelper = new DatabaseHelper(context);
+        databaseHelper.deleteDatabase();
+        eventDataAccess = (EventDataAccess) databaseHelper.getDataAccess(DatabaseHelper.DataAccessType.EVENT);
+    }
+
+    @After
+    public void tearDown() {
+        databaseHelper.deleteDatabase();
+        databaseHelper.shutdown();
+    }
+
+    @Test
+    public void testInsertAndDrainThroughput() {
+        long start = SystemClock.elapsedRealtime();
+        List<Lanalytics.Event> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+        for (int i = 0; i < BACKLOG_SIZE; i++) {
+            batch.add(createEvent(i));
+            if (batch.size() == INSERT_BATCH_SIZE) {
+                eventDataAccess.addAll(batch);
+                batch.clear();
+            }
+        }
+        eventDataAccess.addAll(batch);
+        long insertMillis = SystemClock.elapsedRealtime() - start;
+        assertEquals(BACKLOG_SIZE, eventDataAccess.getCount());
+
+        start = SystemClock.elapsedRealtime();
+        int drained = 0;
+        List<Lanalytics.Event> head;
+        while (!(head = eventDataAccess.getTop(UPLOAD_BATCH_SIZE)).isEmpty()) {
+            List<String> ids = new ArrayList<>(head.size());
+            for (Lanalytics.Event event : head) {
+                ids.add(event.id);
+            }
+            drained += eventDataAccess.acknowledge(ids);
+            eventDataAccess.getCount();
+        }
+        long drainMillis = SystemClock.elapsedRealtime() - start;
+        assertEquals(BACKLOG_SIZE, drained);
+
+        Log.i(TAG, "insert: " + opsPerSecond(insertMillis) + " ops/sec, drain: " + opsPerSecond(drainMillis) + " ops/sec");
+    }
+
+    @Test
+    public void testBytesPerEvent() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        long emptyBytes = databaseBytes();
+
+        List<Lanalytics.Event> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+        for (int i = 0; i < BACKLOG_SIZE; i++) {
+            batch.add(new Lanalytics.Event.Builder(context)
+                    .setUser(UUID.randomUUID().toString())
+                    .setVerb("VIDEO_PLAY")
+                    .setResource(UUID.randomUUID().toString(), "video")
+                    .putContext("course_id", UUID.randomUUID().toString())
+                    .putContext("current_time", String.valueOf(i))
+                    .build());
+            if (batch.size() == INSERT_BATCH_SIZE) {
+                eventDataAccess.addAll(batch);
+                batch.clear();
+            }
+        }
+        eventDataAccess.addAll(batch);
+
+        Log.i(TAG, "on-disk bytes per event: " + (databaseBytes() - emptyBytes) / BACKLOG_SIZE);
+    }
+
+    private long databaseBytes() {
+        SQLiteDatabase db = databaseHelper.openDatabase();
+        Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null);
+        cursor.moveToFirst();
+        cursor.close();
+        return DatabaseUtils.longForQuery(db, "PRAGMA page_count", null)
+                * DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+    }
+
+    private static long opsPerSecond(long millis) {
+        return BACKLOG_SIZE * 1000L / Math.max(1, millis);
+    }
+
+    private static Lanalytics.Event createEvent(int i) {
+        return Lanalytics.Event.Builder.createEmptyBuilder()
+                .setId(UUID.randomUUID().toString())
+                .setUser(UUID.randomUUID().toString())
+                .setVerb("VIDEO_PLAY")
+                .setResource(UUID.randomUUID().toString(), "video")
+                .putResult("current_time", String.valueOf(i))
+                .putContext("platform", "Android")
+                .setTimestamp("2020-06-01T12:00:00+02:00")
+                .build();
+    }
+
+}
@@ -0,0 +1,28 @@
+package de.xikolo.lanalytics;
+
+import android.content.Context;
+
+import java.util.Map;
+
+import de.xikolo.lanalytics.util.ContextUtil;
+import de.xikolo.lanalytics.util.NetworkUtil;
+
+class AndroidPlatform implements Platform {
+
+    private final Context context;
+
+    AndroidPlatform(Context context) {
+        this.context = context;
+    }
+
+    @Override
+    public NetworkUtil.NetworkConnection getConnection() {
+        return NetworkUtil.getConnectivityStatus(context);
+    }
+
+    @Override
+    public Map<String, String> getDefaultContext() {
+        return ContextUtil.getCachedContextData(context);
+    }
+
+}
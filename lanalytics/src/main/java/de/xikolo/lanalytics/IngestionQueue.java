@@ -0,0 +1,211 @@
+package de.xikolo.lanalytics;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import de.xikolo.lanalytics.database.EventStore;
+import de.xikolo.lanalytics.util.Logger;
+
+/**
+ * Buffers tracked events in memory and persists them in batches from a single writer thread.
+ */
+class IngestionQueue {
+
+    static final int DEFAULT_CAPACITY = 1000;
+
+    static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 2000;
+
+    static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final BlockingQueue<Lanalytics.Event> queue;
+
+    private final EventStore eventStore;
+
+    private final Listener listener;
+
+    private final Object signal = new Object();
+
+    private final Object writeLock = new Object();
+
+    private volatile long flushIntervalMillis = DEFAULT_FLUSH_INTERVAL_MILLIS;
+
+    private volatile int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    private volatile boolean flushRequested;
+
+    private Thread writer;
+
+    IngestionQueue(EventStore eventStore, Listener listener) {
+        this(eventStore, listener, DEFAULT_CAPACITY);
+    }
+
+    IngestionQueue(EventStore eventStore, Listener listener, int capacity) {
+        this.eventStore = eventStore;
+        this.listener = listener;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    void setFlushInterval(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Hands the event over to the writer thread. Only blocks for a short moment if the queue is full.
+     *
+     * @return false if the event had to be dropped
+     */
+    boolean enqueue(Lanalytics.Event event) {
+        ensureWriterStarted();
+
+        boolean accepted = queue.offer(event);
+        if (!accepted) {
+            wakeUpWriter();
+            try {
+                accepted = queue.offer(event, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (!accepted) {
+            Log.w(Lanalytics.TAG, "Ingestion queue is full, dropped event " + event.verb);
+        } else if (queue.size() == 1 || queue.size() >= maxBatchSize) {
+            wakeUpWriter();
+        }
+
+        return accepted;
+    }
+
+    /**
+     * Lets the writer thread persist all pending events right away, without waiting for the flush
+     * interval or a full batch.
+     */
+    void requestFlush() {
+        if (queue.isEmpty()) {
+            return;
+        }
+        ensureWriterStarted();
+        flushRequested = true;
+        wakeUpWriter();
+    }
+
+    /**
+     * Synchronously persists all pending events on the calling thread.
+     *
+     * @return the number of persisted events
+     */
+    int flush() {
+        int persisted = 0;
+        int failed = 0;
+
+        synchronized (writeLock) {
+            List<Lanalytics.Event> batch = new ArrayList<>(maxBatchSize);
+            while (queue.drainTo(batch, maxBatchSize) > 0) {
+                try {
+                    eventStore.addAll(batch);
+                    persisted += batch.size();
+                } catch (Exception e) {
+                    // retrying would most likely fail again, e.g. if the storage is full
+                    Log.e(Lanalytics.TAG, "Could not persist " + batch.size() + " events, dropped them", e);
+                    failed += batch.size();
+                }
+                batch.clear();
+            }
+        }
+
+        if (failed > 0) {
+            listener.onDropped(failed);
+        }
+        if (persisted > 0) {
+            Logger.d(Lanalytics.TAG, "Persisted " + persisted + " events");
+            listener.onPersisted(persisted);
+        }
+
+        return persisted;
+    }
+
+    /**
+     * Drops all events which have not been persisted yet.
+     */
+    void clear() {
+        synchronized (writeLock) {
+            queue.clear();
+        }
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    private void wakeUpWriter() {
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    private synchronized void ensureWriterStarted() {
+        if (writer == null || !writer.isAlive()) {
+            writer = new Thread(new Writer(), "Lanalytics-Ingestion");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    private class Writer implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    awaitBatch();
+                    flushRequested = false;
+                    flush();
+                }
+            } catch (InterruptedException e) {
+                Logger.d(Lanalytics.TAG, "Ingestion writer interrupted");
+            }
+        }
+
+        private void awaitBatch() throws InterruptedException {
+            synchronized (signal) {
+                while (queue.isEmpty()) {
+                    signal.wait();
+                }
+
+                long deadline = System.currentTimeMillis() + flushIntervalMillis;
+                long remaining = flushIntervalMillis;
+                while (queue.size() < maxBatchSize && remaining > 0 && !flushRequested) {
+                    signal.wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            }
+        }
+
+    }
+
+    interface Listener {
+
+        void onPersisted(int count);
+
+        /**
+         * Called when events could not be persisted and are lost.
+         */
+        void onDropped(int count);
+
+    }
+
+}
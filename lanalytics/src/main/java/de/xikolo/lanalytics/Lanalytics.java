@@ -1,23 +1,28 @@
 package de.xikolo.lanalytics;
 
 import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.res.Configuration;
 import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
 
 import java.util.Collections;
-import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
 
 import de.xikolo.lanalytics.database.DatabaseHelper;
 import de.xikolo.lanalytics.database.Entity;
+import de.xikolo.lanalytics.network.NetworkCall;
 import de.xikolo.lanalytics.parser.Parser;
 import de.xikolo.lanalytics.util.ContextUtil;
 import de.xikolo.lanalytics.util.DateUtil;
-import de.xikolo.lanalytics.util.NetworkUtil;
+import okhttp3.OkHttpClient;
 
 @SuppressWarnings("unused")
 public class Lanalytics {
@@ -48,14 +53,60 @@ public class Lanalytics {
         this.endpoint = endpoint;
         this.databaseHelper = new DatabaseHelper(context);
 
+        // uploads are scheduled with network constraints, the callback only updates the context
+        // and cuts a running backoff short
+        ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager != null) {
+            connectivityManager.registerNetworkCallback(
+                    new NetworkRequest.Builder()
+                            .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                            .build(),
+                    new ConnectivityManager.NetworkCallback() {
+                        @Override
+                        public void onAvailable(Network network) {
+                            ContextUtil.invalidateNetwork();
+                            getDefaultTracker().onConnectivityRestored();
+                        }
+
+                        @Override
+                        public void onCapabilitiesChanged(Network network, NetworkCapabilities networkCapabilities) {
+                            ContextUtil.invalidateNetwork();
+                        }
+
+                        @Override
+                        public void onLost(Network network) {
+                            ContextUtil.invalidateNetwork();
+                        }
+                    });
+        }
+
         context.registerReceiver(new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                if (NetworkUtil.isOnline(context)) {
-                    getDefaultTracker().startSending();
+                DateUtil.onTimeZoneChanged();
+            }
+        }, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
+
+        context.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                // the app went to background and may be killed at any time, persisting and
+                // dispatching the events must not block the main thread though
+                if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+                    getDefaultTracker().flushAsync();
                 }
             }
-        }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+                ContextUtil.invalidateScreen();
+            }
+
+            @Override
+            public void onLowMemory() {
+                getDefaultTracker().flushAsync();
+            }
+        });
     }
 
     public Tracker getDefaultTracker() {
@@ -67,10 +118,38 @@ public class Lanalytics {
         return defaultTracker;
     }
 
+    /**
+     * Synchronously persists all tracked events which are still held in memory.
+     */
+    public void flush() {
+        getDefaultTracker().flush();
+    }
+
+    /**
+     * Reads the queue from the database, so it should not be called on the main thread.
+     */
+    public Metrics.Snapshot getMetrics() {
+        return getDefaultTracker().getMetrics();
+    }
+
+    public void setMetricsListener(Metrics.Listener listener) {
+        getDefaultTracker().setMetricsListener(listener);
+    }
+
+    /**
+     * Lets uploads share the connection pool and dispatcher of the given client.
+     */
+    public void setHttpClient(OkHttpClient client) {
+        NetworkCall.setDefaultHttpClient(client);
+    }
+
     public void deleteData() {
         new Thread(() -> {
+            getDefaultTracker().discardPending();
             getDefaultTracker().stopSending();
+            getDefaultTracker().cancelScheduledUploads();
             databaseHelper.deleteDatabase();
+            databaseHelper.shutdown();
         }).start();
     }
 
@@ -82,8 +161,26 @@ public class Lanalytics {
         return ContextUtil.getDefaultContextData(context);
     }
 
+    /**
+     * Implemented by the application to provide the current auth token to scheduled uploads, which
+     * may run in a new process before anything has been tracked. Returns null without a session.
+     */
+    public interface TokenProvider {
+
+        String getLanalyticsToken();
+
+    }
+
     public static class Event implements Entity {
 
+        /**
+         * Decides which events are evicted first when the queue exceeds its limits.
+         * High priority events are never evicted.
+         */
+        public enum Priority {
+            LOW, NORMAL, HIGH
+        }
+
         public final String id;
 
         public final String userId;
@@ -98,20 +195,40 @@ public class Lanalytics {
 
         public final Map<String, String> context;
 
+        /**
+         * The device context data shared with other events, already contained in {@link #context}.
+         */
+        public final Map<String, String> defaultContext;
+
         public final String timestamp;
 
         public final boolean onlyWifi;
 
+        public final Priority priority;
+
         private Event(Builder builder) {
             id = builder.id;
             userId = builder.userId;
             verb = builder.verb;
             resourceId = builder.resourceId;
             resourceType = builder.resourceType;
-            result = Collections.unmodifiableMap(builder.resultMap);
-            context = Collections.unmodifiableMap(builder.contextMap);
+            result = builder.resultMap != null
+                    ? Collections.unmodifiableMap(builder.resultMap)
+                    : Collections.<String, String>emptyMap();
+            // the cached default context is immutable already and shared between events as is
+            defaultContext = builder.defaultContextShared
+                    ? builder.defaultContextMap
+                    : Collections.unmodifiableMap(builder.defaultContextMap);
+            if (builder.contextMap != null) {
+                Map<String, String> mergedContext = new LinkedHashMap<>(builder.defaultContextMap);
+                mergedContext.putAll(builder.contextMap);
+                context = Collections.unmodifiableMap(mergedContext);
+            } else {
+                context = defaultContext;
+            }
             timestamp = builder.timestamp;
             onlyWifi = builder.onlyWifi;
+            priority = builder.priority;
         }
 
         @Override
@@ -135,25 +252,39 @@ public class Lanalytics {
 
             private Map<String, String> contextMap;
 
+            private Map<String, String> defaultContextMap;
+
+            private transient boolean defaultContextShared;
+
             private String timestamp;
 
             private transient boolean onlyWifi;
 
+            private transient Priority priority = Priority.NORMAL;
+
             public Builder(Context context) {
+                this(ContextUtil.getCachedContextData(context));
+            }
+
+            /**
+             * @param defaultContext an immutable map, which is shared by the built events as is
+             */
+            Builder(Map<String, String> defaultContext) {
                 this();
 
                 id = UUID.randomUUID().toString();
 
-                timestamp = DateUtil.format(new Date());
+                timestamp = DateUtil.formatNow();
 
-                contextMap.putAll(ContextUtil.getDefaultContextData(context));
+                defaultContextMap = defaultContext;
 
                 onlyWifi = false;
             }
 
             private Builder() {
-                resultMap = new LinkedHashMap<>();
-                contextMap = new LinkedHashMap<>();
+                // result and context maps are created on first use
+                defaultContextMap = Collections.emptyMap();
+                defaultContextShared = true;
             }
 
             public static Builder createEmptyBuilder() {
@@ -182,22 +313,28 @@ public class Lanalytics {
             }
 
             public Builder putResult(String key, String value) {
-                this.resultMap.put(key, value);
+                getResultMap().put(key, value);
                 return this;
             }
 
             public Builder putAllResults(Map<String, String> results) {
-                this.resultMap.putAll(results);
+                getResultMap().putAll(results);
                 return this;
             }
 
             public Builder putContext(String key, String value) {
-                this.contextMap.put(key, value);
+                getContextMap().put(key, value);
                 return this;
             }
 
             public Builder putAllContexts(Map<String, String> results) {
-                this.contextMap.putAll(results);
+                getContextMap().putAll(results);
+                return this;
+            }
+
+            public Builder setDefaultContext(Map<String, String> defaultContext) {
+                this.defaultContextMap = defaultContext;
+                this.defaultContextShared = false;
                 return this;
             }
 
@@ -211,10 +348,29 @@ public class Lanalytics {
                 return this;
             }
 
+            public Builder setPriority(Priority priority) {
+                this.priority = priority;
+                return this;
+            }
+
             public Event build() {
                 return new Event(this);
             }
 
+            private Map<String, String> getResultMap() {
+                if (resultMap == null) {
+                    resultMap = new LinkedHashMap<>();
+                }
+                return resultMap;
+            }
+
+            private Map<String, String> getContextMap() {
+                if (contextMap == null) {
+                    contextMap = new LinkedHashMap<>();
+                }
+                return contextMap;
+            }
+
         }
 
     }
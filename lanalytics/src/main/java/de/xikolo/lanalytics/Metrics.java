@@ -0,0 +1,201 @@
+package de.xikolo.lanalytics;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters of the analytics pipeline since process start. The queue depth is read from the
+ * database when a snapshot is taken.
+ */
+public class Metrics {
+
+    /**
+     * Upper bounds of the upload latency histogram buckets in milliseconds, the last bucket is
+     * unbounded.
+     */
+    public static final long[] LATENCY_BUCKET_BOUNDS = {100, 250, 500, 1000, 2500, 5000, 10000};
+
+    public interface Listener {
+
+        /**
+         * Called on a background thread after events have been persisted or uploaded.
+         */
+        void onMetricsChanged(Snapshot snapshot);
+
+    }
+
+    private final AtomicLong tracked = new AtomicLong();
+
+    private final AtomicLong persisted = new AtomicLong();
+
+    private final AtomicLong uploaded = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong quarantined = new AtomicLong();
+
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    private final AtomicLongArray latencyCounts = new AtomicLongArray(LATENCY_BUCKET_BOUNDS.length + 1);
+
+    private volatile String lastError;
+
+    private volatile long lastErrorTimestamp;
+
+    void onTracked() {
+        tracked.incrementAndGet();
+    }
+
+    void onPersisted(int count) {
+        persisted.addAndGet(count);
+    }
+
+    void onDropped(int count) {
+        dropped.addAndGet(count);
+    }
+
+    void onQuarantined(int count) {
+        quarantined.addAndGet(count);
+    }
+
+    void onUploaded(int count, long wireBytes, long latencyMillis) {
+        uploaded.addAndGet(count);
+        bytesSent.addAndGet(wireBytes);
+
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKET_BOUNDS.length && latencyMillis > LATENCY_BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+        latencyCounts.incrementAndGet(bucket);
+    }
+
+    void onError(Throwable error) {
+        lastError = error.getClass().getName();
+        lastErrorTimestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * @param compressionRatio the smoothed compression ratio of the uploads
+     */
+    Snapshot snapshot(int queued, int queuedWifiOnly, long oldestEventAgeMillis, double compressionRatio,
+                      Uploader.State uploadState) {
+        long[] latencies = new long[latencyCounts.length()];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = latencyCounts.get(i);
+        }
+
+        return new Snapshot(queued, queuedWifiOnly, oldestEventAgeMillis, tracked.get(), persisted.get(),
+                uploaded.get(), dropped.get(), quarantined.get(), bytesSent.get(), compressionRatio, latencies, lastError,
+                lastErrorTimestamp, uploadState);
+    }
+
+    public static class Snapshot {
+
+        public final int queuedEvents;
+
+        public final int queuedWifiOnlyEvents;
+
+        /**
+         * -1 if the queue is empty
+         */
+        public final long oldestEventAgeMillis;
+
+        public final long trackedEvents;
+
+        public final long persistedEvents;
+
+        public final long uploadedEvents;
+
+        /**
+         * Events dropped because the ingestion queue was full or evicted because of the queue limits.
+         */
+        public final long droppedEvents;
+
+        /**
+         * Events the endpoint permanently rejected, which have been moved out of the queue.
+         */
+        public final long quarantinedEvents;
+
+        public final long bytesSent;
+
+        /**
+         * Smoothed ratio of serialized to transferred bytes, 1.0 without compression.
+         */
+        public final double compressionRatio;
+
+        /**
+         * Number of uploads per bucket of {@link #LATENCY_BUCKET_BOUNDS}.
+         */
+        public final long[] uploadLatencyCounts;
+
+        /**
+         * Class name of the last upload error, null if there was none.
+         */
+        public final String lastError;
+
+        public final long lastErrorTimestamp;
+
+        public final Uploader.State uploadState;
+
+        Snapshot(int queuedEvents, int queuedWifiOnlyEvents, long oldestEventAgeMillis, long trackedEvents,
+                 long persistedEvents, long uploadedEvents, long droppedEvents, long quarantinedEvents, long bytesSent,
+                 double compressionRatio, long[] uploadLatencyCounts, String lastError, long lastErrorTimestamp,
+                 Uploader.State uploadState) {
+            this.queuedEvents = queuedEvents;
+            this.queuedWifiOnlyEvents = queuedWifiOnlyEvents;
+            this.oldestEventAgeMillis = oldestEventAgeMillis;
+            this.trackedEvents = trackedEvents;
+            this.persistedEvents = persistedEvents;
+            this.uploadedEvents = uploadedEvents;
+            this.droppedEvents = droppedEvents;
+            this.quarantinedEvents = quarantinedEvents;
+            this.bytesSent = bytesSent;
+            this.compressionRatio = compressionRatio;
+            this.uploadLatencyCounts = uploadLatencyCounts;
+            this.lastError = lastError;
+            this.lastErrorTimestamp = lastErrorTimestamp;
+            this.uploadState = uploadState;
+        }
+
+        /**
+         * @return all values with readable keys, e.g. to be attached to a report
+         */
+        public Map<String, String> toMap() {
+            Map<String, String> map = new LinkedHashMap<>();
+            map.put("queued_events", String.valueOf(queuedEvents));
+            map.put("queued_wifi_only_events", String.valueOf(queuedWifiOnlyEvents));
+            map.put("oldest_event_age_ms", String.valueOf(oldestEventAgeMillis));
+            map.put("tracked_events", String.valueOf(trackedEvents));
+            map.put("persisted_events", String.valueOf(persistedEvents));
+            map.put("uploaded_events", String.valueOf(uploadedEvents));
+            map.put("dropped_events", String.valueOf(droppedEvents));
+            map.put("quarantined_events", String.valueOf(quarantinedEvents));
+            map.put("bytes_sent", String.valueOf(bytesSent));
+            map.put("compression_ratio", String.format(Locale.US, "%.2f", compressionRatio));
+            map.put("upload_latency_bounds_ms", Arrays.toString(LATENCY_BUCKET_BOUNDS));
+            map.put("upload_latency_counts", Arrays.toString(uploadLatencyCounts));
+            map.put("last_error", String.valueOf(lastError));
+            map.put("last_error_timestamp", String.valueOf(lastErrorTimestamp));
+            map.put("upload_state", String.valueOf(uploadState));
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            for (Map.Entry<String, String> entry : toMap().entrySet()) {
+                if (builder.length() > 0) {
+                    builder.append('\n');
+                }
+                builder.append(entry.getKey()).append(": ").append(entry.getValue());
+            }
+            return builder.toString();
+        }
+
+    }
+
+}
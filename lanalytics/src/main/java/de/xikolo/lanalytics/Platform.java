@@ -0,0 +1,19 @@
+package de.xikolo.lanalytics;
+
+import java.util.Map;
+
+import de.xikolo.lanalytics.util.NetworkUtil;
+
+/**
+ * What the tracker pipeline needs to know about the device.
+ */
+interface Platform {
+
+    NetworkUtil.NetworkConnection getConnection();
+
+    /**
+     * @return the immutable context shared by all events tracked right now
+     */
+    Map<String, String> getDefaultContext();
+
+}
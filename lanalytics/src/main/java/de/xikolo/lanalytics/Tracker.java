@@ -3,132 +3,329 @@ package de.xikolo.lanalytics;
 import android.content.Context;
 import android.util.Log;
 
-import java.io.IOException;
-import java.util.List;
+import java.util.Date;
+import java.util.Map;
 
 import de.xikolo.lanalytics.database.DatabaseHelper;
+import de.xikolo.lanalytics.database.EventStore;
 import de.xikolo.lanalytics.database.access.EventDataAccess;
-import de.xikolo.lanalytics.network.NetworkCall;
-import de.xikolo.lanalytics.parser.Parser;
+import de.xikolo.lanalytics.util.DateUtil;
 import de.xikolo.lanalytics.util.Logger;
 import de.xikolo.lanalytics.util.NetworkUtil;
-import okhttp3.Response;
 
-public class Tracker {
+public class Tracker implements IngestionQueue.Listener, Uploader.Callback {
 
-    private Context context;
+    public static final int DEFAULT_MAX_QUEUED_EVENTS = 20000;
 
-    private String endpoint;
+    public static final long DEFAULT_MAX_QUEUED_BYTES = 10 * 1024 * 1024;
 
-    private EventDataAccess eventDataAccess;
+    /**
+     * Backlogs up to this size are uploaded right away while online, larger ones by a scheduled job.
+     */
+    public static final int DEFAULT_IMMEDIATE_UPLOAD_THRESHOLD = 100;
 
-    private Thread networkRunner;
+    // a scheduled upload is urgent once the queue is half full, to avoid evictions
+    private static final double URGENT_QUEUE_FRACTION = 0.5;
 
-    private volatile boolean sending;
+    private Platform platform;
 
-    private String token;
+    private EventStore eventStore;
+
+    private IngestionQueue ingestionQueue;
+
+    private Uploader uploader;
+
+    private UploadScheduler uploadScheduler;
+
+    private final Metrics metrics = new Metrics();
+
+    private volatile Metrics.Listener metricsListener;
+
+    private volatile String token;
+
+    private volatile int maxQueuedEvents = DEFAULT_MAX_QUEUED_EVENTS;
+
+    private volatile long maxQueuedBytes = DEFAULT_MAX_QUEUED_BYTES;
+
+    private volatile int immediateUploadThreshold = DEFAULT_IMMEDIATE_UPLOAD_THRESHOLD;
 
     Tracker(Context context, String endpoint, DatabaseHelper databaseHelper) {
-        this.context = context;
-        this.endpoint = endpoint;
-        this.eventDataAccess = (EventDataAccess) databaseHelper.getDataAccess(DatabaseHelper.DataAccessType.EVENT);
+        this(new AndroidPlatform(context), endpoint,
+                (EventDataAccess) databaseHelper.getDataAccess(DatabaseHelper.DataAccessType.EVENT),
+                new WorkManagerUploadScheduler(context, endpoint));
+    }
+
+    /**
+     * Independent of Android, e.g. to run the pipeline on the JVM.
+     */
+    Tracker(Platform platform, String endpoint, EventStore eventStore, UploadScheduler uploadScheduler) {
+        this.platform = platform;
+        this.eventStore = eventStore;
+        this.ingestionQueue = new IngestionQueue(eventStore, this);
+        this.uploader = new Uploader(platform, endpoint, eventStore, this, metrics);
+        this.uploadScheduler = uploadScheduler;
     }
 
     public void send(final Lanalytics.Event event, String token) {
         this.token = token;
 
-        new Thread(() -> {
-            Logger.d(Lanalytics.TAG, "Track event " + event.verb);
+        Logger.d(Lanalytics.TAG, "Track event " + event.verb);
 
-            eventDataAccess.add(event);
+        metrics.onTracked();
+        if (!ingestionQueue.enqueue(event)) {
+            metrics.onDropped(1);
+        }
+    }
 
-            startSending();
-        }).start();
+    /**
+     * Synchronously persists all events which are still waiting in the ingestion queue.
+     */
+    public void flush() {
+        ingestionQueue.flush();
     }
 
-    public void startSending() {
-        Logger.d(Lanalytics.TAG, "Trying to start NetworkRunner...");
+    /**
+     * Persists all events which are still waiting in the ingestion queue on its writer thread.
+     */
+    public void flushAsync() {
+        ingestionQueue.requestFlush();
+    }
+
+    /**
+     * Drops all events which have not been persisted yet.
+     */
+    public void discardPending() {
+        ingestionQueue.clear();
+    }
+
+    public void setFlushInterval(long flushIntervalMillis) {
+        ingestionQueue.setFlushInterval(flushIntervalMillis);
+    }
 
-        if (networkRunner == null || !networkRunner.isAlive()) {
-            sending = true;
+    public void setMaxBatchSize(int maxBatchSize) {
+        ingestionQueue.setMaxBatchSize(maxBatchSize);
+    }
+
+    /**
+     * Limits the persisted queue. Once exceeded, low priority events are evicted first.
+     */
+    public void setQueueLimits(int maxEvents, long maxBytes) {
+        this.maxQueuedEvents = maxEvents;
+        this.maxQueuedBytes = maxBytes;
+    }
+
+    /**
+     * @param threshold the largest backlog which is uploaded right away while online
+     */
+    public void setImmediateUploadThreshold(int threshold) {
+        this.immediateUploadThreshold = threshold;
+    }
+
+    /**
+     * @param batchingWindowMillis how long a non-urgent scheduled upload waits for further events
+     */
+    public void setUploadBatchingWindow(long batchingWindowMillis) {
+        uploadScheduler.setBatchingWindow(batchingWindowMillis);
+    }
+
+    /**
+     * Lets non-urgent scheduled uploads wait until the device is charging.
+     */
+    public void setDeferUploadsUntilCharging(boolean deferUntilCharging) {
+        uploadScheduler.setDeferUntilCharging(deferUntilCharging);
+    }
+
+    /**
+     * Lets non-urgent scheduled uploads wait until the device is idle, only on API 23 and later.
+     */
+    public void setDeferUploadsUntilIdle(boolean deferUntilIdle) {
+        uploadScheduler.setDeferUntilIdle(deferUntilIdle);
+    }
+
+    /**
+     * Enables gzip compression of upload request bodies. The endpoint has to support it.
+     */
+    public void setCompressUploads(boolean compressUploads) {
+        uploader.setCompressUploads(compressUploads);
+    }
+
+    /**
+     * Limits the number of events per upload to roughly fit the given number of bytes on the wire.
+     */
+    public void setTargetPayloadBytes(long targetPayloadBytes) {
+        uploader.setTargetPayloadBytes(targetPayloadBytes);
+    }
+
+    @Override
+    public void onPersisted(int count) {
+        metrics.onPersisted(count);
+        try {
+            enforceQueueLimits();
+            dispatchUpload();
+            notifyMetricsListener();
+        } catch (RuntimeException e) {
+            Log.e(Lanalytics.TAG, e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void onDropped(int count) {
+        metrics.onDropped(count);
+    }
 
-            networkRunner = new Thread(new NetworkRunner());
-            networkRunner.start();
+    @Override
+    public void onQueueDrained(boolean scheduled) {
+        // cancelling would also stop the running job, which finishes by itself
+        if (eventStore.getCount() == 0) {
+            if (!scheduled) {
+                uploadScheduler.cancelAll();
+            }
         } else {
-            Logger.d(Lanalytics.TAG, "NetworkRunner already started");
+            // only events for unmetered networks are left
+            if (!scheduled) {
+                uploadScheduler.cancel(false);
+            }
+            scheduleUploads();
+        }
+    }
+
+    @Override
+    public void onUploadStalled() {
+        scheduleUploads();
+    }
+
+    @Override
+    public void onUploaded() {
+        notifyMetricsListener();
+    }
+
+    /**
+     * Reads the queue from the database, so it should not be called on the main thread.
+     */
+    public Metrics.Snapshot getMetrics() {
+        long oldestEventAge = -1;
+        Date oldest = DateUtil.parse(eventStore.getOldestTimestamp());
+        if (oldest != null) {
+            oldestEventAge = Math.max(0, System.currentTimeMillis() - oldest.getTime());
+        }
+        int queued = eventStore.getCount();
+        return metrics.snapshot(
+                queued,
+                queued - eventStore.getCountExcludeWifiOnly(),
+                oldestEventAge,
+                uploader.getCompressionRatio(),
+                uploader.getState());
+    }
+
+    /**
+     * @param listener notified on a background thread whenever events have been persisted or uploaded
+     */
+    public void setMetricsListener(Metrics.Listener listener) {
+        this.metricsListener = listener;
+    }
+
+    /**
+     * Uploads all queued events on the calling thread, called by the scheduled job.
+     *
+     * @param token the current token of the session, which replaces the one of the last event
+     * @param stopSignal whether the job has been stopped, the upload ends after the current batch
+     * @return false if events are left because the device is offline, an upload failed or the job
+     * has been stopped
+     */
+    boolean runScheduledUpload(String token, Uploader.StopSignal stopSignal) {
+        uploadScheduler.onJobStarted();
+        try {
+            flush();
+            this.token = token;
+            uploader.setToken(token);
+            return uploader.uploadPending(stopSignal);
+        } finally {
+            uploadScheduler.onJobFinished();
         }
     }
 
+    public void startSending() {
+        Logger.d(Lanalytics.TAG, "Trying to start Uploader...");
+
+        uploader.setToken(token);
+        uploader.wakeUp();
+    }
+
     public void stopSending() {
-        Logger.d(Lanalytics.TAG, "Trying to stop NetworkRunner...");
+        Logger.d(Lanalytics.TAG, "Trying to stop Uploader...");
 
-        if (networkRunner != null && networkRunner.isAlive()) {
-            sending = false;
+        uploader.stop();
+    }
 
-            try {
-                networkRunner.join();
-                Logger.d(Lanalytics.TAG, "NetworkRunner stopped");
-            } catch (InterruptedException e) {
-                Logger.d(Lanalytics.TAG, "NetworkRunner interrupted");
-            }
+    /**
+     * Cancels all scheduled uploads, e.g. because the queued events have been deleted.
+     */
+    public void cancelScheduledUploads() {
+        uploadScheduler.cancelAll();
+    }
+
+    /**
+     * Cuts a running backoff short. Without one, the scheduled jobs take care of the queue.
+     */
+    public void onConnectivityRestored() {
+        if (uploader.getState() == Uploader.State.BACKING_OFF) {
+            uploader.resetBackoff();
+        }
+    }
+
+    private boolean isOnline() {
+        return platform.getConnection() != NetworkUtil.NetworkConnection.NOT_CONNECTED;
+    }
+
+    private void notifyMetricsListener() {
+        Metrics.Listener listener = metricsListener;
+        if (listener != null) {
+            listener.onMetricsChanged(getMetrics());
+        }
+    }
+
+    private void dispatchUpload() {
+        if (eventStore.getCount() <= immediateUploadThreshold && isOnline()) {
+            startSending();
         } else {
-            Logger.d(Lanalytics.TAG, "NetworkRunner already stopped");
+            scheduleUploads();
         }
     }
 
-    private class NetworkRunner implements Runnable {
-
-        @Override
-        public void run() {
-            try {
-                while (sending && getCountBasedOnNetwork() > 0 && NetworkUtil.isOnline(context)) {
-                    Logger.d(Lanalytics.TAG, "NetworkRunner started");
-
-                    List<Lanalytics.Event> eventList;
-                    if (NetworkUtil.getConnectivityStatus(context) == NetworkUtil.NetworkConnection.MOBILE) {
-                        eventList = eventDataAccess.getTopExcludeWifiOnly(50);
-                    } else {
-                        eventList = eventDataAccess.getTop(50);
-                    }
-
-                    if (eventList.size() <= 0) {
-                        break;
-                    }
-
-                    String json;
-                    if (eventList.size() == 1) {
-                        json = Parser.toJsonApi(eventList.get(0));
-                    } else {
-                        json = Parser.toJsonApi(eventList);
-                    }
-
-                    Response response = new NetworkCall(endpoint)
-                            .authorize(token)
-                            .postJsonApi(json)
-                            .execute();
-                    if (!response.isSuccessful()) {
-                        response.body().close();
-                        throw new IOException("Post Request on " + endpoint + " was not successful. Status Code " + response.code());
-                    }
-                    response.body().close();
-
-                    for (Lanalytics.Event event : eventList) {
-                        eventDataAccess.delete(event);
-                    }
-                }
-            } catch (Exception e) {
-                Log.e(Lanalytics.TAG, e.getMessage(), e);
-            }
+    private void scheduleUploads() {
+        int count = eventStore.getCount();
+        if (count == 0) {
+            return;
         }
 
-        private int getCountBasedOnNetwork() {
-            if (NetworkUtil.getConnectivityStatus(context) == NetworkUtil.NetworkConnection.MOBILE) {
-                return eventDataAccess.getCountExcludeWifiOnly();
-            } else {
-                return eventDataAccess.getCount();
+        boolean urgent = count >= maxQueuedEvents * URGENT_QUEUE_FRACTION;
+        int anyNetworkCount = eventStore.getCountExcludeWifiOnly();
+        if (anyNetworkCount > 0) {
+            uploadScheduler.schedule(false, urgent);
+        }
+        if (count > anyNetworkCount) {
+            uploadScheduler.schedule(true, urgent);
+        }
+    }
+
+    private void enforceQueueLimits() {
+        Map<String, Integer> evicted = eventStore.evict(maxQueuedEvents, maxQueuedBytes);
+        if (!evicted.isEmpty()) {
+            int count = 0;
+            for (int evictedCount : evicted.values()) {
+                count += evictedCount;
             }
+            metrics.onDropped(count);
+            Log.w(Lanalytics.TAG, "Queue limit exceeded, evicted events " + evicted);
         }
+    }
+
+    public Uploader.State getUploadState() {
+        return uploader.getState();
+    }
 
+    public void setUploadStateListener(Uploader.StateListener listener) {
+        uploader.setStateListener(listener);
     }
 
 }
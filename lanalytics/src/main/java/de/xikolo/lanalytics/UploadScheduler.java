@@ -0,0 +1,41 @@
+package de.xikolo.lanalytics;
+
+/**
+ * Schedules deferrable uploads of the queued events, which run through
+ * {@link Tracker#runScheduledUpload(String, Uploader.StopSignal)}. Jobs do not keep any
+ * credentials, the current token is requested from the application when they run.
+ */
+interface UploadScheduler {
+
+    void setBatchingWindow(long batchingWindowMillis);
+
+    void setDeferUntilCharging(boolean deferUntilCharging);
+
+    void setDeferUntilIdle(boolean deferUntilIdle);
+
+    /**
+     * @param unmetered whether the job is for events which may only be sent via unmetered networks
+     * @param urgent    whether the job should run as soon as a network is available, otherwise it
+     *                  waits for the batching window and, if configured, for the device to charge
+     *                  or to be idle
+     */
+    void schedule(boolean unmetered, boolean urgent);
+
+    void cancel(boolean unmetered);
+
+    /**
+     * Cancels all jobs, including those enqueued by an earlier process.
+     */
+    void cancelAll();
+
+    /**
+     * Called when a job starts, the next stall has to enqueue a new one.
+     */
+    void onJobStarted();
+
+    /**
+     * Called when a job is done, whether it uploaded all events or not.
+     */
+    void onJobFinished();
+
+}
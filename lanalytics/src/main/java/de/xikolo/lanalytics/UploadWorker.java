@@ -0,0 +1,45 @@
+package de.xikolo.lanalytics;
+
+import android.content.Context;
+
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import de.xikolo.lanalytics.util.Logger;
+
+/**
+ * Uploads the queued events when scheduled by WorkManager, see {@link WorkManagerUploadScheduler}.
+ * The token is requested from the application, which has to implement
+ * {@link Lanalytics.TokenProvider}.
+ */
+public class UploadWorker extends Worker {
+
+    static final String KEY_ENDPOINT = "endpoint";
+
+    public UploadWorker(Context context, WorkerParameters params) {
+        super(context, params);
+    }
+
+    @Override
+    public Result doWork() {
+        String endpoint = getInputData().getString(KEY_ENDPOINT);
+        if (endpoint == null) {
+            return Result.failure();
+        }
+
+        String token = null;
+        if (getApplicationContext() instanceof Lanalytics.TokenProvider) {
+            token = ((Lanalytics.TokenProvider) getApplicationContext()).getLanalyticsToken();
+        }
+        if (token == null) {
+            // the events are uploaded with the next session, or deleted on logout
+            Logger.d(Lanalytics.TAG, "Skipped scheduled upload without session");
+            return Result.success();
+        }
+
+        Tracker tracker = Lanalytics.getInstance(getApplicationContext(), endpoint).getDefaultTracker();
+        // stopped when the constraints are no longer met, the result is ignored then
+        return tracker.runScheduledUpload(token, this::isStopped) ? Result.success() : Result.retry();
+    }
+
+}
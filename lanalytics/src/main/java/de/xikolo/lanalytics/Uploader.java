@@ -0,0 +1,455 @@
+package de.xikolo.lanalytics;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import de.xikolo.lanalytics.database.EventBatch;
+import de.xikolo.lanalytics.database.EventStore;
+import de.xikolo.lanalytics.database.SubEventBatch;
+import de.xikolo.lanalytics.network.Backoff;
+import de.xikolo.lanalytics.network.BatchSizer;
+import de.xikolo.lanalytics.network.EventBatchRequestBody;
+import de.xikolo.lanalytics.network.GzipRequestBody;
+import de.xikolo.lanalytics.network.NetworkCall;
+import de.xikolo.lanalytics.network.UploadRejectedException;
+import de.xikolo.lanalytics.util.Logger;
+import de.xikolo.lanalytics.util.NetworkUtil;
+import okhttp3.Response;
+
+/**
+ * Long-lived upload loop which drains the event queue batch by batch and backs off
+ * exponentially when the endpoint cannot be reached. Batches the endpoint permanently rejects
+ * are split until the rejected events are isolated, which are then quarantined.
+ */
+public class Uploader {
+
+    public enum State {
+        IDLE, UPLOADING, BACKING_OFF
+    }
+
+    public interface StateListener {
+
+        void onStateChanged(State state);
+
+    }
+
+    interface Callback {
+
+        /**
+         * The queue is empty, nothing is left to upload.
+         *
+         * @param scheduled whether the queue has been drained by a scheduled job
+         */
+        void onQueueDrained(boolean scheduled);
+
+        /**
+         * Events are left in the queue because the device is offline or the upload failed.
+         */
+        void onUploadStalled();
+
+        /**
+         * A batch has been uploaded and removed from the queue.
+         */
+        void onUploaded();
+
+    }
+
+    interface StopSignal {
+
+        /**
+         * @return whether a synchronous upload should stop after the current batch
+         */
+        boolean isStopped();
+
+    }
+
+    private enum Outcome {
+        DRAINED, UPLOADED, FAILED, OFFLINE
+    }
+
+    static final long INITIAL_BACKOFF_MILLIS = 5 * 1000;
+
+    static final long MAX_BACKOFF_MILLIS = 30 * 60 * 1000;
+
+    private final Platform platform;
+
+    private final String endpoint;
+
+    private final EventStore eventStore;
+
+    private final Backoff backoff;
+
+    private final BatchSizer batchSizer;
+
+    private final Callback callback;
+
+    private final Metrics metrics;
+
+    // serializes uploads of the loop and of scheduled jobs, so no batch is sent twice
+    private final Object drainLock = new Object();
+
+    private volatile String token;
+
+    private volatile State state = State.IDLE;
+
+    private volatile StateListener stateListener;
+
+    private volatile boolean compressUploads;
+
+    private volatile boolean running;
+
+    private boolean pending;
+
+    private boolean backoffCancelled;
+
+    private Thread thread;
+
+    Uploader(Platform platform, String endpoint, EventStore eventStore, Callback callback, Metrics metrics) {
+        this.platform = platform;
+        this.endpoint = endpoint;
+        this.eventStore = eventStore;
+        this.callback = callback;
+        this.metrics = metrics;
+        this.backoff = new Backoff(INITIAL_BACKOFF_MILLIS, MAX_BACKOFF_MILLIS);
+        this.batchSizer = new BatchSizer();
+    }
+
+    void setToken(String token) {
+        this.token = token;
+    }
+
+    void setCompressUploads(boolean compressUploads) {
+        this.compressUploads = compressUploads;
+    }
+
+    void setTargetPayloadBytes(long targetPayloadBytes) {
+        batchSizer.setTargetPayloadBytes(targetPayloadBytes);
+    }
+
+    /**
+     * @return the smoothed ratio of serialized to transferred bytes of recent uploads
+     */
+    public double getCompressionRatio() {
+        return batchSizer.getCompressionRatio();
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void setStateListener(StateListener stateListener) {
+        this.stateListener = stateListener;
+    }
+
+    /**
+     * Requests an upload run. Has no effect on a pending backoff.
+     */
+    synchronized void wakeUp() {
+        pending = true;
+        running = true;
+        if (thread == null || !thread.isAlive()) {
+            thread = new Thread(new Loop(), "Lanalytics-Uploader");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Cuts a pending backoff short, e.g. because the device just came online again.
+     */
+    synchronized void resetBackoff() {
+        backoff.reset();
+        backoffCancelled = true;
+        notifyAll();
+    }
+
+    /**
+     * Uploads all pending events on the calling thread, without backing off.
+     *
+     * @param stopSignal checked before each batch, e.g. whether the scheduled job has been stopped
+     * @return false if events are left because the device is offline, an upload failed or the
+     * upload has been stopped
+     */
+    boolean uploadPending(StopSignal stopSignal) {
+        try {
+            while (true) {
+                if (stopSignal.isStopped()) {
+                    Logger.d(Lanalytics.TAG, "Stopped upload of pending events");
+                    return false;
+                }
+                switch (drainBatch(true)) {
+                    case DRAINED:
+                        return true;
+                    case FAILED:
+                    case OFFLINE:
+                        return false;
+                }
+            }
+        } finally {
+            synchronized (this) {
+                if (thread == null || !thread.isAlive()) {
+                    setState(State.IDLE);
+                }
+            }
+        }
+    }
+
+    void stop() {
+        Thread current;
+        synchronized (this) {
+            running = false;
+            current = thread;
+            notifyAll();
+        }
+
+        if (current != null && current.isAlive()) {
+            try {
+                current.join();
+                Logger.d(Lanalytics.TAG, "Uploader stopped");
+            } catch (InterruptedException e) {
+                Logger.d(Lanalytics.TAG, "Uploader interrupted");
+            }
+        }
+    }
+
+    private void setState(State state) {
+        if (this.state != state) {
+            this.state = state;
+            StateListener listener = stateListener;
+            if (listener != null) {
+                listener.onStateChanged(state);
+            }
+        }
+    }
+
+    private Outcome drainBatch(boolean scheduled) {
+        synchronized (drainLock) {
+            // one connectivity snapshot per batch
+            NetworkUtil.NetworkConnection connection = platform.getConnection();
+            if (connection == NetworkUtil.NetworkConnection.NOT_CONNECTED) {
+                return Outcome.OFFLINE;
+            }
+
+            EventBatch batch = eventStore.openTop(
+                    batchSizer.getBatchSize(),
+                    connection == NetworkUtil.NetworkConnection.MOBILE);
+            try {
+                if (batch.size() == 0) {
+                    backoff.reset();
+                    eventStore.pruneContextSnapshots();
+                    callback.onQueueDrained(scheduled);
+                    return Outcome.DRAINED;
+                }
+
+                setState(State.UPLOADING);
+                Logger.d(Lanalytics.TAG, "Uploading " + batch.size() + " events, about " + batch.getEstimatedBytes() + " bytes");
+                return upload(batch) ? Outcome.UPLOADED : Outcome.FAILED;
+            } finally {
+                batch.close();
+            }
+        }
+    }
+
+    /**
+     * Uploads the batch and acknowledges its events. A permanently rejected batch is bisected.
+     *
+     * @return false if events are left because of a retryable failure
+     */
+    private boolean upload(EventBatch batch) {
+        try {
+            send(batch);
+        } catch (UploadRejectedException e) {
+            return isolateRejected(batch, e.getStatusCode());
+        } catch (IOException e) {
+            return false;
+        }
+
+        acknowledge(batch.getIds());
+        return true;
+    }
+
+    /**
+     * Splits a rejected batch until the rejected events are isolated and quarantines them, the
+     * accepted parts are acknowledged. One malformed event among n costs about 2 log2(n) requests.
+     */
+    private boolean isolateRejected(EventBatch batch, int statusCode) {
+        List<String> accepted = new ArrayList<>();
+        Map<Integer, List<String>> rejected = new HashMap<>();
+        try {
+            return bisect(batch, statusCode, accepted, rejected);
+        } finally {
+            // rows are deleted only after the cursor of the batch has been read for the last time
+            acknowledge(accepted);
+            for (Map.Entry<Integer, List<String>> entry : rejected.entrySet()) {
+                int quarantined = eventStore.quarantine(entry.getValue(), entry.getKey());
+                metrics.onQuarantined(quarantined);
+                Log.w(Lanalytics.TAG, "Quarantined " + quarantined + " events rejected with status code " + entry.getKey());
+            }
+        }
+    }
+
+    private boolean bisect(EventBatch batch, int statusCode, List<String> accepted, Map<Integer, List<String>> rejected) {
+        if (batch.size() == 1) {
+            List<String> ids = rejected.get(statusCode);
+            if (ids == null) {
+                ids = new ArrayList<>();
+                rejected.put(statusCode, ids);
+            }
+            ids.add(batch.getIds().get(0));
+            return true;
+        }
+
+        int half = batch.size() / 2;
+        EventBatch[] halves = {new SubEventBatch(batch, 0, half), new SubEventBatch(batch, half, batch.size())};
+        for (EventBatch part : halves) {
+            try {
+                send(part);
+                accepted.addAll(part.getIds());
+            } catch (UploadRejectedException e) {
+                if (!bisect(part, e.getStatusCode(), accepted, rejected)) {
+                    return false;
+                }
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Posts the batch and records the outcome, without touching the queue.
+     */
+    private void send(EventBatch batch) throws IOException {
+        EventBatchRequestBody body = new EventBatchRequestBody(batch);
+        GzipRequestBody gzipBody = compressUploads ? new GzipRequestBody(body) : null;
+
+        NetworkCall call = new NetworkCall(endpoint).authorize(token);
+        if (gzipBody != null) {
+            call.postJsonApi(gzipBody);
+        } else {
+            call.postJsonApi(body);
+        }
+
+        long start = elapsedMillis();
+        try {
+            execute(call);
+        } catch (UploadRejectedException e) {
+            Log.w(Lanalytics.TAG, e.getMessage());
+            metrics.onError(e);
+            throw e;
+        } catch (IOException e) {
+            Log.e(Lanalytics.TAG, e.getMessage(), e);
+            batchSizer.onFailure();
+            metrics.onError(e);
+            throw e;
+        }
+        long latency = elapsedMillis() - start;
+
+        long rawBytes = body.getBytesWritten();
+        long wireBytes = gzipBody != null ? gzipBody.getBytesWritten() : rawBytes;
+        batchSizer.onSuccess(batch.size(), rawBytes, wireBytes, latency);
+        backoff.reset();
+        metrics.onUploaded(batch.size(), wireBytes, latency);
+        Logger.d(Lanalytics.TAG, "Uploaded " + batch.size() + " events, " + rawBytes + " bytes as " + wireBytes + " bytes");
+    }
+
+    private void acknowledge(List<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        int acknowledged = eventStore.acknowledge(ids);
+        if (acknowledged != ids.size()) {
+            Log.w(Lanalytics.TAG, "Acknowledged " + acknowledged + " of " + ids.size() + " uploaded events");
+        }
+        callback.onUploaded();
+    }
+
+    private void execute(NetworkCall call) throws IOException {
+        Response response = call.execute();
+        response.body().close();
+        if (UploadRejectedException.isPermanent(response.code())) {
+            throw new UploadRejectedException("Post Request on " + endpoint + " was rejected. Status Code " + response.code(), response.code());
+        }
+        if (!response.isSuccessful()) {
+            throw new IOException("Post Request on " + endpoint + " was not successful. Status Code " + response.code());
+        }
+    }
+
+    // monotonic like SystemClock.elapsedRealtime(), but also available off-device
+    private static long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private class Loop implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                while (awaitWork()) {
+                    try {
+                        drain();
+                    } catch (RuntimeException e) {
+                        Log.e(Lanalytics.TAG, e.getMessage(), e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Logger.d(Lanalytics.TAG, "Uploader interrupted");
+            } finally {
+                setState(State.IDLE);
+            }
+        }
+
+        private boolean awaitWork() throws InterruptedException {
+            setState(State.IDLE);
+            synchronized (Uploader.this) {
+                while (running && !pending) {
+                    Uploader.this.wait();
+                }
+                pending = false;
+                return running;
+            }
+        }
+
+        private void drain() throws InterruptedException {
+            while (running) {
+                switch (drainBatch(false)) {
+                    case DRAINED:
+                        return;
+                    case OFFLINE:
+                        callback.onUploadStalled();
+                        return;
+                    case FAILED:
+                        callback.onUploadStalled();
+                        awaitBackoff(backoff.nextDelay());
+                        break;
+                }
+            }
+        }
+
+        private void awaitBackoff(long delayMillis) throws InterruptedException {
+            setState(State.BACKING_OFF);
+            Logger.d(Lanalytics.TAG, "Uploader backing off for " + delayMillis + " ms");
+
+            synchronized (Uploader.this) {
+                backoffCancelled = false;
+                long deadline = elapsedMillis() + delayMillis;
+                long remaining = delayMillis;
+                while (running && !backoffCancelled && remaining > 0) {
+                    Uploader.this.wait(remaining);
+                    remaining = deadline - elapsedMillis();
+                }
+            }
+        }
+
+    }
+
+}
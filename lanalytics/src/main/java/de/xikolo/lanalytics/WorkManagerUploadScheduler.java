@@ -0,0 +1,161 @@
+package de.xikolo.lanalytics;
+
+import android.content.Context;
+import android.os.Build;
+
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+
+import java.util.concurrent.TimeUnit;
+
+import de.xikolo.lanalytics.util.Logger;
+
+/**
+ * Schedules deferrable uploads with WorkManager. There is one unique job for events which may be
+ * sent via any network and one for events which may only be sent via unmetered networks.
+ */
+class WorkManagerUploadScheduler implements UploadScheduler {
+
+    static final String WORK_NAME = "lanalytics-upload";
+
+    static final String WORK_NAME_UNMETERED = "lanalytics-upload-unmetered";
+
+    static final long DEFAULT_BATCHING_WINDOW_MILLIS = 15 * 60 * 1000;
+
+    private static final long BACKOFF_DELAY_MILLIS = 30 * 1000;
+
+    private enum Level {
+        NONE, DEFERRED, URGENT
+    }
+
+    private final Context context;
+
+    private final String endpoint;
+
+    private volatile long batchingWindowMillis = DEFAULT_BATCHING_WINDOW_MILLIS;
+
+    private volatile boolean deferUntilCharging;
+
+    private volatile boolean deferUntilIdle;
+
+    // what has been enqueued by this process, saves redundant enqueue calls
+    private Level scheduled = Level.NONE;
+
+    private Level scheduledUnmetered = Level.NONE;
+
+    // jobs of this process which are uploading right now
+    private int runningJobs;
+
+    WorkManagerUploadScheduler(Context context, String endpoint) {
+        this.context = context;
+        this.endpoint = endpoint;
+    }
+
+    @Override
+    public void setBatchingWindow(long batchingWindowMillis) {
+        this.batchingWindowMillis = batchingWindowMillis;
+    }
+
+    @Override
+    public void setDeferUntilCharging(boolean deferUntilCharging) {
+        this.deferUntilCharging = deferUntilCharging;
+    }
+
+    @Override
+    public void setDeferUntilIdle(boolean deferUntilIdle) {
+        this.deferUntilIdle = deferUntilIdle;
+    }
+
+    @Override
+    public synchronized void schedule(boolean unmetered, boolean urgent) {
+        Level level = urgent ? Level.URGENT : Level.DEFERRED;
+        Level current = unmetered ? scheduledUnmetered : scheduled;
+        if (current.compareTo(level) >= 0) {
+            return;
+        }
+
+        Constraints.Builder constraints = new Constraints.Builder()
+                .setRequiredNetworkType(unmetered ? NetworkType.UNMETERED : NetworkType.CONNECTED);
+        boolean idle = false;
+        if (!urgent) {
+            constraints.setRequiresBatteryNotLow(true);
+            constraints.setRequiresCharging(deferUntilCharging);
+            if (deferUntilIdle && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                constraints.setRequiresDeviceIdle(true);
+                idle = true;
+            }
+        }
+
+        OneTimeWorkRequest.Builder builder = new OneTimeWorkRequest.Builder(UploadWorker.class)
+                .setConstraints(constraints.build())
+                .setInitialDelay(urgent ? 0 : batchingWindowMillis, TimeUnit.MILLISECONDS)
+                .setInputData(new Data.Builder()
+                        .putString(UploadWorker.KEY_ENDPOINT, endpoint)
+                        .build());
+        if (!idle) {
+            // WorkManager does not allow a backoff for idle mode jobs
+            builder.setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        // an urgent job replaces a deferred one, otherwise a pending job collects further events,
+        // a running job must not be replaced though, it would be stopped
+        ExistingWorkPolicy policy;
+        if (runningJobs > 0) {
+            policy = ExistingWorkPolicy.APPEND;
+        } else {
+            policy = urgent ? ExistingWorkPolicy.REPLACE : ExistingWorkPolicy.KEEP;
+        }
+        WorkManager.getInstance(context).enqueueUniqueWork(
+                unmetered ? WORK_NAME_UNMETERED : WORK_NAME,
+                policy,
+                builder.build());
+
+        if (unmetered) {
+            scheduledUnmetered = level;
+        } else {
+            scheduled = level;
+        }
+        Logger.d(Lanalytics.TAG, "Scheduled " + level + " upload" + (unmetered ? " via unmetered networks" : ""));
+    }
+
+    @Override
+    public synchronized void cancel(boolean unmetered) {
+        Level current = unmetered ? scheduledUnmetered : scheduled;
+        if (current == Level.NONE) {
+            return;
+        }
+
+        WorkManager.getInstance(context).cancelUniqueWork(unmetered ? WORK_NAME_UNMETERED : WORK_NAME);
+        if (unmetered) {
+            scheduledUnmetered = Level.NONE;
+        } else {
+            scheduled = Level.NONE;
+        }
+    }
+
+    @Override
+    public synchronized void cancelAll() {
+        WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME);
+        WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME_UNMETERED);
+        scheduled = Level.NONE;
+        scheduledUnmetered = Level.NONE;
+    }
+
+    @Override
+    public synchronized void onJobStarted() {
+        scheduled = Level.NONE;
+        scheduledUnmetered = Level.NONE;
+        runningJobs++;
+    }
+
+    @Override
+    public synchronized void onJobFinished() {
+        runningJobs--;
+    }
+
+}
@@ -3,6 +3,7 @@ package de.xikolo.lanalytics.database;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import java.util.ArrayList;
@@ -10,7 +11,10 @@ import java.util.List;
 
 import de.xikolo.lanalytics.database.access.DataAccess;
 import de.xikolo.lanalytics.database.access.EventDataAccess;
+import de.xikolo.lanalytics.database.tables.ContextSnapshotTable;
+import de.xikolo.lanalytics.database.tables.DroppedEventTable;
 import de.xikolo.lanalytics.database.tables.EventTable;
+import de.xikolo.lanalytics.database.tables.QuarantinedEventTable;
 import de.xikolo.lanalytics.database.tables.Table;
 
 @SuppressWarnings("unused")
@@ -18,7 +22,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
     private static final String TAG = DatabaseHelper.class.getSimpleName();
 
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 5;
 
     private static final String DATABASE_NAME = "lanalytics";
 
@@ -26,15 +30,21 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
     private List<Table> tables;
 
-    private int openCounter;
+    private final StatementCache statementCache;
 
     public DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
 
+        // readers on the upload thread must not block the ingestion writer
+        setWriteAheadLoggingEnabled(true);
+
         tables = new ArrayList<>();
+        tables.add(new ContextSnapshotTable());
         tables.add(new EventTable());
+        tables.add(new DroppedEventTable());
+        tables.add(new QuarantinedEventTable());
 
-        openCounter = 0;
+        statementCache = new StatementCache();
     }
 
     @Override
@@ -63,25 +73,42 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         }
     }
 
+    /**
+     * Returns the shared connection, which stays open for the life of the process.
+     */
     public synchronized SQLiteDatabase openDatabase() {
-        openCounter++;
-        if (openCounter == 1) {
+        if (db == null || !db.isOpen()) {
             db = getWritableDatabase();
         }
         return this.db;
     }
 
+    /**
+     * Runs the action with a cached compiled statement for the shared connection. Only use it for
+     * statements with a fixed number of arguments.
+     */
+    public <T> T executeStatement(String sql, StatementCache.Action<T> action) {
+        return statementCache.execute(openDatabase(), sql, action);
+    }
+
+    /**
+     * Releases all cached statements and closes the shared connection.
+     * The next access opens a new connection.
+     */
+    public synchronized void shutdown() {
+        statementCache.clear();
+        super.close();
+        db = null;
+    }
+
     @Override
     public synchronized void close() {
-        if (openCounter > 0) {
-            openCounter--;
-        }
-        if (openCounter == 0) {
-            super.close();
-        }
+        shutdown();
     }
 
-    public void deleteDatabase() {
+    public synchronized void deleteDatabase() {
+        // compiled statements are bound to the dropped tables
+        statementCache.clear();
         for (Table table : tables) {
             table.deleteTable(openDatabase());
         }
@@ -0,0 +1,50 @@
+package de.xikolo.lanalytics.database;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * Forward-only view on a batch of queued events which exposes the stored JSON fragments as they
+ * are, so that they can be written to the wire without parsing them first.
+ */
+public interface EventBatch extends Closeable {
+
+    int size();
+
+    List<String> getIds();
+
+    /**
+     * @return the size of the events as estimated when they were queued, without reading them
+     */
+    long getEstimatedBytes();
+
+    /**
+     * Positions the batch before its first event.
+     */
+    void reset();
+
+    /**
+     * @return false at the end of the batch, or if the next event is no longer available
+     */
+    boolean moveToNext();
+
+    String getId();
+
+    String getUser();
+
+    String getVerb();
+
+    String getResourceId();
+
+    String getResourceType();
+
+    String getTimestamp();
+
+    String getResultJson();
+
+    String getContextJson();
+
+    @Override
+    void close();
+
+}
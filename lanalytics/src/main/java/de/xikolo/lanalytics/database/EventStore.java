@@ -0,0 +1,75 @@
+package de.xikolo.lanalytics.database;
+
+import java.util.List;
+import java.util.Map;
+
+import de.xikolo.lanalytics.Lanalytics;
+
+/**
+ * Persistent queue of tracked events as used by the tracker pipeline.
+ */
+public interface EventStore {
+
+    /**
+     * Context key of the evicted events per verb as JSON object, e.g. {"VIDEO_SEEK":12}.
+     */
+    String CONTEXT_DROPPED_EVENTS = "dropped_events";
+
+    /**
+     * Queues the events. Dropped counts which have not been reported yet are attached to the
+     * first high priority event, which is never evicted, and cleared at once.
+     */
+    void addAll(List<Lanalytics.Event> events);
+
+    /**
+     * Opens the oldest queued events for streaming. The caller has to close the batch.
+     *
+     * @param excludeWifiOnly whether events which may only be sent via wifi are skipped
+     */
+    EventBatch openTop(int limit, boolean excludeWifiOnly);
+
+    /**
+     * Deletes the uploaded events with the given ids.
+     *
+     * @return the number of deleted events
+     */
+    int acknowledge(List<String> ids);
+
+    /**
+     * Moves the events with the given ids from the queue to the quarantine.
+     *
+     * @param statusCode the status the endpoint rejected the events with
+     * @return the number of quarantined events
+     */
+    int quarantine(List<String> ids, int statusCode);
+
+    int getQuarantinedCount();
+
+    /**
+     * Evicts queued events until the queue fits the given limits, lowest priority and oldest
+     * first, and records the number of evicted events per verb.
+     *
+     * @return the number of evicted events per verb
+     */
+    Map<String, Integer> evict(int maxEvents, long maxBytes);
+
+    /**
+     * @return the number of evicted events per verb which have not been reported yet
+     */
+    Map<String, Integer> getDroppedCounts();
+
+    /**
+     * Removes data which is no longer referenced by any queued event.
+     */
+    void pruneContextSnapshots();
+
+    int getCount();
+
+    int getCountExcludeWifiOnly();
+
+    /**
+     * @return the timestamp of the oldest queued event, null if the queue is empty
+     */
+    String getOldestTimestamp();
+
+}
@@ -0,0 +1,113 @@
+package de.xikolo.lanalytics.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of compiled statements for one open connection. Only statements with
+ * a fixed number of arguments should be cached, others would evict the frequently used ones.
+ *
+ * A statement is leased exclusively while it is executed, so it is never closed or bound by
+ * another thread in the meantime. A thread which finds the statement leased compiles a temporary
+ * one instead of waiting, the connection may be held by a transaction of the other thread.
+ */
+public class StatementCache {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    public interface Action<T> {
+
+        T run(SQLiteStatement statement);
+
+    }
+
+    private final Map<String, Entry> entries;
+
+    StatementCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    StatementCache(final int capacity) {
+        entries = new LinkedHashMap<String, Entry>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > capacity) {
+                    eldest.getValue().discard();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Runs the action with the compiled statement, its bindings are cleared afterwards.
+     */
+    <T> T execute(SQLiteDatabase db, String sql, Action<T> action) {
+        Entry entry = lease(db, sql);
+        try {
+            return action.run(entry.statement);
+        } finally {
+            release(entry);
+        }
+    }
+
+    synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            entry.discard();
+        }
+        entries.clear();
+    }
+
+    private synchronized Entry lease(SQLiteDatabase db, String sql) {
+        Entry entry = entries.get(sql);
+        if (entry == null) {
+            entry = new Entry(db.compileStatement(sql));
+            entries.put(sql, entry);
+        } else if (entry.leased) {
+            Entry temporary = new Entry(db.compileStatement(sql));
+            temporary.discarded = true;
+            entry = temporary;
+        }
+        entry.leased = true;
+        return entry;
+    }
+
+    private synchronized void release(Entry entry) {
+        entry.leased = false;
+        if (entry.discarded) {
+            entry.statement.close();
+        } else {
+            entry.statement.clearBindings();
+        }
+    }
+
+    // only accessed while holding the lock of the cache
+    private static class Entry {
+
+        final SQLiteStatement statement;
+
+        boolean leased;
+
+        boolean discarded;
+
+        Entry(SQLiteStatement statement) {
+            this.statement = statement;
+        }
+
+        /**
+         * Closes the statement, or lets its lease close it when done.
+         */
+        void discard() {
+            discarded = true;
+            if (!leased) {
+                statement.close();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,111 @@
+package de.xikolo.lanalytics.database;
+
+import java.util.List;
+
+/**
+ * View on a contiguous range of another batch. Closing the view does not close the parent.
+ */
+public class SubEventBatch implements EventBatch {
+
+    private final EventBatch parent;
+
+    private final int from;
+
+    private final int to;
+
+    private int position = -1;
+
+    /**
+     * @param from the index of the first event, inclusive
+     * @param to   the index of the last event, exclusive
+     */
+    public SubEventBatch(EventBatch parent, int from, int to) {
+        if (from < 0 || to > parent.size() || from > to) {
+            throw new IndexOutOfBoundsException("Invalid range " + from + " to " + to + " of " + parent.size());
+        }
+        this.parent = parent;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public List<String> getIds() {
+        return parent.getIds().subList(from, to);
+    }
+
+    /**
+     * @return the share of the estimate of the parent, assuming events of similar size
+     */
+    @Override
+    public long getEstimatedBytes() {
+        return parent.size() > 0 ? parent.getEstimatedBytes() * size() / parent.size() : 0;
+    }
+
+    @Override
+    public void reset() {
+        parent.reset();
+        for (int i = 0; i < from; i++) {
+            parent.moveToNext();
+        }
+        position = -1;
+    }
+
+    @Override
+    public boolean moveToNext() {
+        if (position + 1 >= size()) {
+            return false;
+        }
+        position++;
+        return parent.moveToNext();
+    }
+
+    @Override
+    public String getId() {
+        return parent.getId();
+    }
+
+    @Override
+    public String getUser() {
+        return parent.getUser();
+    }
+
+    @Override
+    public String getVerb() {
+        return parent.getVerb();
+    }
+
+    @Override
+    public String getResourceId() {
+        return parent.getResourceId();
+    }
+
+    @Override
+    public String getResourceType() {
+        return parent.getResourceType();
+    }
+
+    @Override
+    public String getTimestamp() {
+        return parent.getTimestamp();
+    }
+
+    @Override
+    public String getResultJson() {
+        return parent.getResultJson();
+    }
+
+    @Override
+    public String getContextJson() {
+        return parent.getContextJson();
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
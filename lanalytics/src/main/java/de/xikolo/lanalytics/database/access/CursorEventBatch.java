@@ -0,0 +1,239 @@
+package de.xikolo.lanalytics.database.access;
+
+import android.database.Cursor;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import de.xikolo.lanalytics.database.EventBatch;
+import de.xikolo.lanalytics.database.tables.EventTable;
+
+/**
+ * Batch whose ids and stored sizes are read up front. The rows themselves are only queried while
+ * the batch is written and are read from the cursor one at a time, so the heap holds the strings
+ * of a single event.
+ */
+class CursorEventBatch implements EventBatch {
+
+    interface RowQuery {
+
+        /**
+         * @return the rows of the batch in queue order, they may lack rows deleted in the meantime
+         */
+        Cursor open();
+
+    }
+
+    private final RowQuery query;
+
+    private final String snapshotColumn;
+
+    private final List<String> ids;
+
+    private final long estimatedBytes;
+
+    private Cursor cursor;
+
+    private int position = -1;
+
+    private int idIndex;
+
+    private int userIndex;
+
+    private int verbIndex;
+
+    private int resourceIdIndex;
+
+    private int resourceTypeIndex;
+
+    private int timestampIndex;
+
+    private int resultIndex;
+
+    private int contextIndex;
+
+    private int snapshotIndex;
+
+    // consecutive events mostly share their snapshot, so the last one is kept parsed
+    private String lastSnapshotJson;
+
+    private Map<String, String> lastSnapshot = Collections.emptyMap();
+
+    /**
+     * @param estimatedBytes the sum of the sizes stored for the events
+     */
+    CursorEventBatch(List<String> ids, long estimatedBytes, RowQuery query, String snapshotColumn) {
+        this.ids = Collections.unmodifiableList(ids);
+        this.estimatedBytes = estimatedBytes;
+        this.query = query;
+        this.snapshotColumn = snapshotColumn;
+    }
+
+    @Override
+    public int size() {
+        return ids.size();
+    }
+
+    @Override
+    public List<String> getIds() {
+        return ids;
+    }
+
+    @Override
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Queries the rows again, each pass over the batch reads them from the database.
+     */
+    @Override
+    public void reset() {
+        if (cursor != null) {
+            cursor.close();
+        }
+        cursor = query.open();
+        position = -1;
+
+        idIndex = cursor.getColumnIndexOrThrow(EventTable.COLUMN_ID);
+        userIndex = cursor.getColumnIndexOrThrow(EventTable.COLUMN_USER);
+        verbIndex = cursor.getColumnIndexOrThrow(EventTable.COLUMN_VERB);
+        resourceIdIndex = cursor.getColumnIndexOrThrow(EventTable.COLUMN_RESOURCE_ID);
+        resourceTypeIndex = cursor.getColumnIndexOrThrow(EventTable.COLUMN_RESOURCE_TYPE);
+        timestampIndex = cursor.getColumnIndexOrThrow(EventTable.COLUMN_TIMESTAMP);
+        resultIndex = cursor.getColumnIndexOrThrow(EventTable.COLUMN_RESULT);
+        contextIndex = cursor.getColumnIndexOrThrow(EventTable.COLUMN_CONTEXT);
+        snapshotIndex = cursor.getColumnIndexOrThrow(snapshotColumn);
+    }
+
+    /**
+     * @return false at the end of the batch, and as well if the next event has been deleted since
+     * the batch was opened
+     */
+    @Override
+    public boolean moveToNext() {
+        if (cursor == null) {
+            reset();
+        }
+        if (position + 1 >= ids.size() || !cursor.moveToNext()) {
+            return false;
+        }
+        position++;
+        return ids.get(position).equals(cursor.getString(idIndex));
+    }
+
+    @Override
+    public String getId() {
+        return cursor.getString(idIndex);
+    }
+
+    @Override
+    public String getUser() {
+        return cursor.getString(userIndex);
+    }
+
+    @Override
+    public String getVerb() {
+        return cursor.getString(verbIndex);
+    }
+
+    @Override
+    public String getResourceId() {
+        return cursor.getString(resourceIdIndex);
+    }
+
+    @Override
+    public String getResourceType() {
+        return cursor.getString(resourceTypeIndex);
+    }
+
+    @Override
+    public String getTimestamp() {
+        return cursor.getString(timestampIndex);
+    }
+
+    @Override
+    public String getResultJson() {
+        return cursor.getString(resultIndex);
+    }
+
+    @Override
+    public String getContextJson() {
+        String snapshotJson = cursor.getString(snapshotIndex);
+        if (!Objects.equals(snapshotJson, lastSnapshotJson)) {
+            lastSnapshot = parseObject(snapshotJson);
+            lastSnapshotJson = snapshotJson;
+        }
+        return mergeObjects(lastSnapshot, parseObject(cursor.getString(contextIndex)));
+    }
+
+    @Override
+    public void close() {
+        if (cursor != null) {
+            cursor.close();
+            cursor = null;
+        }
+    }
+
+    /**
+     * Serializes the default context merged with the extras of an event, whose keys override the
+     * default ones, so each key is written once.
+     */
+    static String mergeObjects(Map<String, String> defaults, Map<String, String> extras) {
+        Map<String, String> merged = defaults;
+        if (!extras.isEmpty()) {
+            merged = new LinkedHashMap<>(defaults);
+            merged.putAll(extras);
+        }
+
+        StringWriter json = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(json)) {
+            writer.beginObject();
+            for (Map.Entry<String, String> entry : merged.entrySet()) {
+                writer.name(entry.getKey()).value(entry.getValue());
+            }
+            writer.endObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return json.toString();
+    }
+
+    /**
+     * Reads a stored flat object of strings, as written by Gson for a string map.
+     */
+    static Map<String, String> parseObject(String json) {
+        if (json == null || json.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, String> map = new LinkedHashMap<>();
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                } else {
+                    map.put(name, reader.nextString());
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        }
+        return map;
+    }
+
+}
@@ -9,6 +9,7 @@ import java.util.List;
 
 import de.xikolo.lanalytics.database.DatabaseHelper;
 import de.xikolo.lanalytics.database.Entity;
+import de.xikolo.lanalytics.database.StatementCache;
 import de.xikolo.lanalytics.database.tables.Table;
 
 @SuppressWarnings("unused")
@@ -27,13 +28,12 @@ public abstract class DataAccess<E extends Entity> {
        return databaseHelper.openDatabase();
     }
 
-    protected void closeDatabase() {
-        databaseHelper.close();
+    protected <T> T executeStatement(String sql, StatementCache.Action<T> action) {
+        return databaseHelper.executeStatement(sql, action);
     }
 
     public void add(E entity) {
         openDatabase().insert(table.getTableName(), null, buildContentValues(entity));
-        closeDatabase();
     }
 
     public void addOrUpdate(E entity) {
@@ -54,7 +54,6 @@ public abstract class DataAccess<E extends Entity> {
             entity = buildEntity(cursor);
         }
         cursor.close();
-        closeDatabase();
 
         return entity;
     }
@@ -64,9 +63,13 @@ public abstract class DataAccess<E extends Entity> {
     }
 
     protected List<E> getAll(String selectQuery) {
+        return getAll(selectQuery, null);
+    }
+
+    protected List<E> getAll(String selectQuery, String[] selectionArgs) {
         List<E> list = new ArrayList<>();
 
-        Cursor cursor = openDatabase().rawQuery(selectQuery, null);
+        Cursor cursor = openDatabase().rawQuery(selectQuery, selectionArgs);
 
         if (cursor.moveToFirst()) {
             do {
@@ -76,7 +79,6 @@ public abstract class DataAccess<E extends Entity> {
         }
 
         cursor.close();
-        closeDatabase();
 
         return list;
     }
@@ -86,18 +88,14 @@ public abstract class DataAccess<E extends Entity> {
     protected abstract ContentValues buildContentValues(E entity);
 
     public int getCount() {
-        return getCount("SELECT * FROM " + table.getTableName());
+        return getCount("SELECT COUNT(*) FROM " + table.getTableName());
     }
 
+    /**
+     * @param countQuery A query returning a single aggregate, e.g. SELECT COUNT(*)
+     */
     public int getCount(String countQuery) {
-        Cursor cursor = openDatabase().rawQuery(countQuery, null);
-
-        int count = cursor.getCount();
-
-        cursor.close();
-        closeDatabase();
-
-        return count;
+        return executeStatement(countQuery, statement -> (int) statement.simpleQueryForLong());
     }
 
     public int update(E entity) {
@@ -107,8 +105,6 @@ public abstract class DataAccess<E extends Entity> {
                 Table.COLUMN_ID + " =? ",
                 new String[]{String.valueOf(entity.getId())});
 
-        closeDatabase();
-
         return affected;
     }
 
@@ -117,8 +113,6 @@ public abstract class DataAccess<E extends Entity> {
                 table.getTableName(),
                 Table.COLUMN_ID + " =? ",
                 new String[]{String.valueOf(entity.getId())});
-
-        closeDatabase();
     }
 
 }
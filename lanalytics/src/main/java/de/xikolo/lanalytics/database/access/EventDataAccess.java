@@ -2,22 +2,188 @@ package de.xikolo.lanalytics.database.access;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import de.xikolo.lanalytics.Lanalytics;
 import de.xikolo.lanalytics.database.DatabaseHelper;
+import de.xikolo.lanalytics.database.EventBatch;
+import de.xikolo.lanalytics.database.EventStore;
+import de.xikolo.lanalytics.database.tables.ContextSnapshotTable;
+import de.xikolo.lanalytics.database.tables.DroppedEventTable;
 import de.xikolo.lanalytics.database.tables.EventTable;
+import de.xikolo.lanalytics.database.tables.QuarantinedEventTable;
 import de.xikolo.lanalytics.database.tables.Table;
 
 @SuppressWarnings("unused")
-public class EventDataAccess extends DataAccess<Lanalytics.Event> {
+public class EventDataAccess extends DataAccess<Lanalytics.Event> implements EventStore {
+
+    /**
+     * Older quarantined events are deleted once there are more than this.
+     */
+    public static final int MAX_QUARANTINED_EVENTS = 500;
+
+    /**
+     * Stays below SQLITE_MAX_VARIABLE_NUMBER, which defaults to 999 on older SQLite versions.
+     */
+    static final int MAX_BOUND_PARAMETERS = 999;
+
+    private static final String INSERT_STATEMENT =
+            "INSERT OR IGNORE INTO " + EventTable.TABLE_NAME + " (" +
+                    EventTable.COLUMN_ID + ", " +
+                    EventTable.COLUMN_USER + ", " +
+                    EventTable.COLUMN_VERB + ", " +
+                    EventTable.COLUMN_RESOURCE_ID + ", " +
+                    EventTable.COLUMN_RESOURCE_TYPE + ", " +
+                    EventTable.COLUMN_RESULT + ", " +
+                    EventTable.COLUMN_CONTEXT + ", " +
+                    EventTable.COLUMN_TIMESTAMP + ", " +
+                    EventTable.COLUMN_WIFI_ONLY + ", " +
+                    EventTable.COLUMN_CONTEXT_SNAPSHOT + ", " +
+                    EventTable.COLUMN_PRIORITY + ", " +
+                    EventTable.COLUMN_SIZE + ", " +
+                    EventTable.COLUMN_SEQ +
+                    ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, " +
+                    "(SELECT IFNULL(MAX(" + EventTable.COLUMN_SEQ + "), 0) + 1 FROM " + EventTable.TABLE_NAME + "))";
+
+    private static final String INSERT_CONTEXT_SNAPSHOT =
+            "INSERT OR IGNORE INTO " + ContextSnapshotTable.TABLE_NAME + " (" +
+                    ContextSnapshotTable.COLUMN_ID + ", " +
+                    ContextSnapshotTable.COLUMN_DATA +
+                    ") VALUES (?, ?)";
+
+    private static final String DELETE_UNREFERENCED_CONTEXT_SNAPSHOTS =
+            "DELETE FROM " + ContextSnapshotTable.TABLE_NAME +
+                    " WHERE " + ContextSnapshotTable.COLUMN_ID + " NOT IN (" +
+                    "SELECT " + EventTable.COLUMN_CONTEXT_SNAPSHOT + " FROM " + EventTable.TABLE_NAME +
+                    " WHERE " + EventTable.COLUMN_CONTEXT_SNAPSHOT + " IS NOT NULL)";
+
+    private static final String COLUMN_SNAPSHOT_DATA = "snapshot_data";
+
+    private static final String SELECT_WITH_SNAPSHOT =
+            "SELECT e.*, s." + ContextSnapshotTable.COLUMN_DATA + " AS " + COLUMN_SNAPSHOT_DATA +
+                    " FROM " + EventTable.TABLE_NAME + " e" +
+                    " LEFT JOIN " + ContextSnapshotTable.TABLE_NAME + " s" +
+                    " ON e." + EventTable.COLUMN_CONTEXT_SNAPSHOT + " = s." + ContextSnapshotTable.COLUMN_ID;
+
+    private static final String SELECT_HEAD =
+            SELECT_WITH_SNAPSHOT +
+                    " ORDER BY e." + EventTable.COLUMN_SEQ + " LIMIT ?";
+
+    private static final String SELECT_HEAD_EXCLUDE_WIFI_ONLY =
+            SELECT_WITH_SNAPSHOT +
+                    " WHERE e." + EventTable.COLUMN_WIFI_ONLY + " = 0" +
+                    " ORDER BY e." + EventTable.COLUMN_SEQ + " LIMIT ?";
+
+    private static final String SELECT_HEAD_SIZES =
+            "SELECT " + EventTable.COLUMN_ID + ", " + EventTable.COLUMN_SEQ + ", " + EventTable.COLUMN_SIZE +
+                    " FROM " + EventTable.TABLE_NAME +
+                    " ORDER BY " + EventTable.COLUMN_SEQ + " LIMIT ?";
+
+    private static final String SELECT_HEAD_SIZES_EXCLUDE_WIFI_ONLY =
+            "SELECT " + EventTable.COLUMN_ID + ", " + EventTable.COLUMN_SEQ + ", " + EventTable.COLUMN_SIZE +
+                    " FROM " + EventTable.TABLE_NAME +
+                    " WHERE " + EventTable.COLUMN_WIFI_ONLY + " = 0" +
+                    " ORDER BY " + EventTable.COLUMN_SEQ + " LIMIT ?";
+
+    private static final String SELECT_RANGE =
+            SELECT_WITH_SNAPSHOT +
+                    " WHERE e." + EventTable.COLUMN_SEQ + " BETWEEN ? AND ?" +
+                    " ORDER BY e." + EventTable.COLUMN_SEQ;
+
+    private static final String SELECT_RANGE_EXCLUDE_WIFI_ONLY =
+            SELECT_WITH_SNAPSHOT +
+                    " WHERE e." + EventTable.COLUMN_SEQ + " BETWEEN ? AND ?" +
+                    " AND e." + EventTable.COLUMN_WIFI_ONLY + " = 0" +
+                    " ORDER BY e." + EventTable.COLUMN_SEQ;
+
+    private static final String COUNT_EXCLUDE_WIFI_ONLY =
+            "SELECT COUNT(*) FROM " + EventTable.TABLE_NAME +
+                    " WHERE " + EventTable.COLUMN_WIFI_ONLY + " = 0";
+
+    private static final String SELECT_OLDEST_TIMESTAMP =
+            "SELECT " + EventTable.COLUMN_TIMESTAMP + " FROM " + EventTable.TABLE_NAME +
+                    " ORDER BY " + EventTable.COLUMN_SEQ + " LIMIT 1";
+
+    private static final String SELECT_QUEUE_SIZE =
+            "SELECT COUNT(*), IFNULL(SUM(" + EventTable.COLUMN_SIZE + "), 0) FROM " + EventTable.TABLE_NAME;
+
+    private static final String SELECT_EVICTION_CANDIDATES =
+            "SELECT " + EventTable.COLUMN_ID + ", " + EventTable.COLUMN_VERB + ", " + EventTable.COLUMN_SIZE +
+                    " FROM " + EventTable.TABLE_NAME +
+                    " WHERE " + EventTable.COLUMN_PRIORITY + " < " + Lanalytics.Event.Priority.HIGH.ordinal() +
+                    " ORDER BY " + EventTable.COLUMN_PRIORITY + ", " + EventTable.COLUMN_SEQ;
+
+    private static final String INSERT_DROPPED_EVENT =
+            "INSERT OR IGNORE INTO " + DroppedEventTable.TABLE_NAME + " (" +
+                    DroppedEventTable.COLUMN_ID + ", " +
+                    DroppedEventTable.COLUMN_COUNT +
+                    ") VALUES (?, 0)";
+
+    private static final String UPDATE_DROPPED_EVENT =
+            "UPDATE " + DroppedEventTable.TABLE_NAME +
+                    " SET " + DroppedEventTable.COLUMN_COUNT + " = " + DroppedEventTable.COLUMN_COUNT + " + ?" +
+                    " WHERE " + DroppedEventTable.COLUMN_ID + " = ?";
+
+    private static final String INSERT_QUARANTINED_EVENTS =
+            "INSERT OR REPLACE INTO " + QuarantinedEventTable.TABLE_NAME + " (" +
+                    QuarantinedEventTable.COLUMN_ID + ", " +
+                    QuarantinedEventTable.COLUMN_USER + ", " +
+                    QuarantinedEventTable.COLUMN_VERB + ", " +
+                    QuarantinedEventTable.COLUMN_RESOURCE_ID + ", " +
+                    QuarantinedEventTable.COLUMN_RESOURCE_TYPE + ", " +
+                    QuarantinedEventTable.COLUMN_RESULT + ", " +
+                    QuarantinedEventTable.COLUMN_CONTEXT + ", " +
+                    QuarantinedEventTable.COLUMN_CONTEXT_SNAPSHOT_DATA + ", " +
+                    QuarantinedEventTable.COLUMN_TIMESTAMP + ", " +
+                    QuarantinedEventTable.COLUMN_STATUS_CODE + ", " +
+                    QuarantinedEventTable.COLUMN_QUARANTINED_AT +
+                    ") SELECT e." + EventTable.COLUMN_ID + ", e." + EventTable.COLUMN_USER +
+                    ", e." + EventTable.COLUMN_VERB + ", e." + EventTable.COLUMN_RESOURCE_ID +
+                    ", e." + EventTable.COLUMN_RESOURCE_TYPE + ", e." + EventTable.COLUMN_RESULT +
+                    ", e." + EventTable.COLUMN_CONTEXT + ", s." + ContextSnapshotTable.COLUMN_DATA +
+                    ", e." + EventTable.COLUMN_TIMESTAMP + ", ?, ?" +
+                    " FROM " + EventTable.TABLE_NAME + " e" +
+                    " LEFT JOIN " + ContextSnapshotTable.TABLE_NAME + " s" +
+                    " ON e." + EventTable.COLUMN_CONTEXT_SNAPSHOT + " = s." + ContextSnapshotTable.COLUMN_ID +
+                    " WHERE e." + EventTable.COLUMN_ID + " IN (";
+
+    private static final String DELETE_OLDEST_QUARANTINED_EVENTS =
+            "DELETE FROM " + QuarantinedEventTable.TABLE_NAME +
+                    " WHERE rowid NOT IN (SELECT rowid FROM " + QuarantinedEventTable.TABLE_NAME +
+                    " ORDER BY " + QuarantinedEventTable.COLUMN_QUARANTINED_AT + " DESC LIMIT ?)";
+
+    private static final Gson GSON = new GsonBuilder().create();
+
+    private static final Type TYPE_OF_HASH_MAP = new TypeToken<LinkedHashMap<String, String>>() {}.getType();
+
+    private final Object snapshotLock = new Object();
+
+    private final Map<String, Map<String, String>> parsedSnapshots = new HashMap<>();
+
+    private Map<String, String> lastSnapshot;
+
+    private String lastSnapshotHash;
+
+    // unknown after start, the counts may have been recorded by an earlier process
+    private volatile boolean droppedCountsPending = true;
 
     public EventDataAccess(DatabaseHelper databaseHelper, Table table) {
         super(databaseHelper, table);
@@ -25,50 +191,508 @@ public class EventDataAccess extends DataAccess<Lanalytics.Event> {
 
     @SuppressWarnings("unchecked")
     protected Lanalytics.Event buildEntity(Cursor cursor) {
-        Type typeOfHashMap = new TypeToken<LinkedHashMap<String, String>>() {}.getType();
-        Gson gson = new GsonBuilder().create();
+        Lanalytics.Event.Builder builder = Lanalytics.Event.Builder.createEmptyBuilder()
+                .setId(cursor.getString(cursor.getColumnIndexOrThrow(EventTable.COLUMN_ID)))
+                .setUser(cursor.getString(cursor.getColumnIndexOrThrow(EventTable.COLUMN_USER)))
+                .setVerb(cursor.getString(cursor.getColumnIndexOrThrow(EventTable.COLUMN_VERB)))
+                .setResource(
+                        cursor.getString(cursor.getColumnIndexOrThrow(EventTable.COLUMN_RESOURCE_ID)),
+                        cursor.getString(cursor.getColumnIndexOrThrow(EventTable.COLUMN_RESOURCE_TYPE)))
+                .putAllResults(GSON.fromJson(cursor.getString(cursor.getColumnIndexOrThrow(EventTable.COLUMN_RESULT)), TYPE_OF_HASH_MAP))
+                .putAllContexts(GSON.fromJson(cursor.getString(cursor.getColumnIndexOrThrow(EventTable.COLUMN_CONTEXT)), TYPE_OF_HASH_MAP))
+                .setTimestamp(cursor.getString(cursor.getColumnIndexOrThrow(EventTable.COLUMN_TIMESTAMP)))
+                .setOnlyWifi(cursor.getInt(cursor.getColumnIndexOrThrow(EventTable.COLUMN_WIFI_ONLY)) != 0)
+                .setPriority(getPriority(cursor.getInt(cursor.getColumnIndexOrThrow(EventTable.COLUMN_PRIORITY))));
 
-        int i = 0;
+        int snapshotIndex = cursor.getColumnIndex(COLUMN_SNAPSHOT_DATA);
+        int snapshotHashIndex = cursor.getColumnIndex(EventTable.COLUMN_CONTEXT_SNAPSHOT);
+        if (snapshotIndex >= 0 && snapshotHashIndex >= 0 && !cursor.isNull(snapshotIndex)) {
+            String hash = cursor.getString(snapshotHashIndex);
+            synchronized (parsedSnapshots) {
+                Map<String, String> snapshot = parsedSnapshots.get(hash);
+                if (snapshot == null) {
+                    snapshot = Collections.unmodifiableMap(GSON.fromJson(cursor.getString(snapshotIndex), TYPE_OF_HASH_MAP));
+                    parsedSnapshots.put(hash, snapshot);
+                }
+                builder.setDefaultContext(snapshot);
+            }
+        }
 
-        return Lanalytics.Event.Builder.createEmptyBuilder()
-                .setId(cursor.getString(i++))
-                .setUser(cursor.getString(i++))
-                .setVerb(cursor.getString(i++))
-                .setResource(cursor.getString(i++), cursor.getString(i++))
-                .putAllResults(gson.fromJson(cursor.getString(i++), typeOfHashMap))
-                .putAllContexts(gson.fromJson(cursor.getString(i++), typeOfHashMap))
-                .setTimestamp(cursor.getString(i++))
-                .setOnlyWifi(cursor.getInt(i) != 0)
-                .build();
+        return builder.build();
     }
 
     protected ContentValues buildContentValues(Lanalytics.Event event) {
-        Gson gson = new GsonBuilder().create();
-
         ContentValues values = new ContentValues();
         values.put(EventTable.COLUMN_ID, event.id);
         values.put(EventTable.COLUMN_USER, event.userId);
         values.put(EventTable.COLUMN_VERB, event.verb);
         values.put(EventTable.COLUMN_RESOURCE_ID, event.resourceId);
         values.put(EventTable.COLUMN_RESOURCE_TYPE, event.resourceType);
-        values.put(EventTable.COLUMN_RESULT, gson.toJson(event.result));
-        values.put(EventTable.COLUMN_CONTEXT, gson.toJson(event.context));
+        values.put(EventTable.COLUMN_RESULT, GSON.toJson(event.result));
+        values.put(EventTable.COLUMN_CONTEXT, GSON.toJson(getContextExtras(event)));
+        synchronized (snapshotLock) {
+            values.put(EventTable.COLUMN_CONTEXT_SNAPSHOT, storeContextSnapshot(event.defaultContext, new HashSet<String>()));
+        }
         values.put(EventTable.COLUMN_TIMESTAMP, event.timestamp);
         values.put(EventTable.COLUMN_WIFI_ONLY, event.onlyWifi);
+        values.put(EventTable.COLUMN_PRIORITY, event.priority.ordinal());
+        values.put(EventTable.COLUMN_SIZE, estimateSize(event,
+                values.getAsString(EventTable.COLUMN_RESULT), values.getAsString(EventTable.COLUMN_CONTEXT)));
 
         return values;
     }
 
+    /**
+     * Inserts all events in a single transaction, reusing the cached compiled insert statement.
+     * The dropped counts which have not been reported yet are attached to the first high priority
+     * event and cleared in the same transaction.
+     */
+    @Override
+    public void addAll(List<Lanalytics.Event> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        SQLiteDatabase db = openDatabase();
+        synchronized (snapshotLock) {
+            boolean reportDropped = droppedCountsPending && containsHighPriority(events);
+            if (reportDropped) {
+                // reset first, an eviction committed after the counts are read sets it again
+                droppedCountsPending = false;
+            }
+            boolean successful = false;
+            db.beginTransaction();
+            try {
+                String droppedCounts = reportDropped ? takeDroppedCounts() : null;
+                Set<String> storedSnapshots = new HashSet<>();
+                for (Lanalytics.Event event : events) {
+                    Map<String, String> extras = getContextExtras(event);
+                    if (droppedCounts != null && event.priority == Lanalytics.Event.Priority.HIGH) {
+                        extras.put(CONTEXT_DROPPED_EVENTS, droppedCounts);
+                        droppedCounts = null;
+                    }
+                    String result = GSON.toJson(event.result);
+                    String context = GSON.toJson(extras);
+                    String snapshotHash = storeContextSnapshot(event.defaultContext, storedSnapshots);
+                    executeStatement(INSERT_STATEMENT, statement -> {
+                        bindNullable(statement, 1, event.id);
+                        bindNullable(statement, 2, event.userId);
+                        bindNullable(statement, 3, event.verb);
+                        bindNullable(statement, 4, event.resourceId);
+                        bindNullable(statement, 5, event.resourceType);
+                        statement.bindString(6, result);
+                        statement.bindString(7, context);
+                        bindNullable(statement, 8, event.timestamp);
+                        statement.bindLong(9, event.onlyWifi ? 1 : 0);
+                        bindNullable(statement, 10, snapshotHash);
+                        statement.bindLong(11, event.priority.ordinal());
+                        statement.bindLong(12, estimateSize(event, result, context));
+                        return statement.executeInsert();
+                    });
+                }
+                db.setTransactionSuccessful();
+                successful = true;
+            } finally {
+                db.endTransaction();
+                if (reportDropped && !successful) {
+                    droppedCountsPending = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes all events with the given ids in a single transaction.
+     *
+     * @return the number of deleted rows
+     */
+    @Override
+    public int acknowledge(List<String> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        int deleted;
+
+        SQLiteDatabase db = openDatabase();
+        db.beginTransaction();
+        try {
+            deleted = delete(ids);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Moves the events with the given ids from the queue to the quarantine in a single transaction.
+     *
+     * @param statusCode the status the endpoint rejected the events with
+     * @return the number of quarantined events
+     */
+    @Override
+    public int quarantine(List<String> ids, int statusCode) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        int quarantined = 0;
+        long now = System.currentTimeMillis();
+
+        SQLiteDatabase db = openDatabase();
+        db.beginTransaction();
+        try {
+            for (int from = 0; from < ids.size(); from += MAX_BOUND_PARAMETERS - 2) {
+                List<String> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_BOUND_PARAMETERS - 2));
+                // not cached, the number of arguments varies
+                Object[] args = new Object[chunk.size() + 2];
+                args[0] = statusCode;
+                args[1] = now;
+                for (int i = 0; i < chunk.size(); i++) {
+                    args[i + 2] = chunk.get(i);
+                }
+                db.execSQL(INSERT_QUARANTINED_EVENTS + placeholders(chunk.size()) + ")", args);
+            }
+            quarantined = delete(ids);
+
+            executeStatement(DELETE_OLDEST_QUARANTINED_EVENTS, statement -> {
+                statement.bindLong(1, MAX_QUARANTINED_EVENTS);
+                return statement.executeUpdateDelete();
+            });
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return quarantined;
+    }
+
+    @Override
+    public int getQuarantinedCount() {
+        return getCount("SELECT COUNT(*) FROM " + QuarantinedEventTable.TABLE_NAME);
+    }
+
+    /**
+     * Evicts queued events until the queue fits the given limits, lowest priority and oldest
+     * first, and records the number of evicted events per verb. High priority events are kept
+     * even if the limits cannot be met without them.
+     *
+     * @return the number of evicted events per verb
+     */
+    @Override
+    public Map<String, Integer> evict(int maxEvents, long maxBytes) {
+        Map<String, Integer> evicted = new LinkedHashMap<>();
+
+        SQLiteDatabase db = openDatabase();
+        db.beginTransaction();
+        try {
+            long excessEvents;
+            long excessBytes;
+            Cursor cursor = db.rawQuery(SELECT_QUEUE_SIZE, null);
+            try {
+                cursor.moveToFirst();
+                excessEvents = cursor.getLong(0) - maxEvents;
+                excessBytes = cursor.getLong(1) - maxBytes;
+            } finally {
+                cursor.close();
+            }
+
+            if (excessEvents <= 0 && excessBytes <= 0) {
+                db.setTransactionSuccessful();
+                return evicted;
+            }
+
+            List<String> ids = new ArrayList<>();
+            cursor = db.rawQuery(SELECT_EVICTION_CANDIDATES, null);
+            try {
+                while ((excessEvents > 0 || excessBytes > 0) && cursor.moveToNext()) {
+                    ids.add(cursor.getString(0));
+                    String verb = String.valueOf(cursor.getString(1));
+                    Integer count = evicted.get(verb);
+                    evicted.put(verb, count == null ? 1 : count + 1);
+                    excessEvents--;
+                    excessBytes -= cursor.getLong(2);
+                }
+            } finally {
+                cursor.close();
+            }
+
+            delete(ids);
+            for (Map.Entry<String, Integer> entry : evicted.entrySet()) {
+                addDroppedCount(entry.getKey(), entry.getValue());
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (!evicted.isEmpty()) {
+            droppedCountsPending = true;
+        }
+        return evicted;
+    }
+
+    /**
+     * @return the number of evicted events per verb which have not been reported yet
+     */
+    @Override
+    public Map<String, Integer> getDroppedCounts() {
+        Map<String, Integer> dropped = new LinkedHashMap<>();
+
+        Cursor cursor = openDatabase().query(DroppedEventTable.TABLE_NAME,
+                new String[]{DroppedEventTable.COLUMN_ID, DroppedEventTable.COLUMN_COUNT},
+                DroppedEventTable.COLUMN_COUNT + " > 0", null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                dropped.put(cursor.getString(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return dropped;
+    }
+
+    /**
+     * Deletes the events with the given ids, has to be called within a transaction.
+     */
+    private int delete(List<String> ids) {
+        int deleted = 0;
+
+        // not cached, the number of arguments varies
+        SQLiteDatabase db = openDatabase();
+        for (int from = 0; from < ids.size(); from += MAX_BOUND_PARAMETERS) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_BOUND_PARAMETERS));
+            deleted += db.delete(EventTable.TABLE_NAME,
+                    EventTable.COLUMN_ID + " IN (" + placeholders(chunk.size()) + ")",
+                    chunk.toArray(new String[0]));
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Reads and deletes the recorded dropped counts, has to be called within a transaction.
+     *
+     * @return the counts per verb as JSON object, null if nothing has been dropped
+     */
+    private String takeDroppedCounts() {
+        Map<String, Integer> dropped = getDroppedCounts();
+        if (dropped.isEmpty()) {
+            return null;
+        }
+        openDatabase().delete(DroppedEventTable.TABLE_NAME, null, null);
+        return GSON.toJson(dropped);
+    }
+
+    private static boolean containsHighPriority(List<Lanalytics.Event> events) {
+        for (Lanalytics.Event event : events) {
+            if (event.priority == Lanalytics.Event.Priority.HIGH) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addDroppedCount(String verb, int count) {
+        executeStatement(INSERT_DROPPED_EVENT, statement -> {
+            statement.bindString(1, verb);
+            return statement.executeInsert();
+        });
+        executeStatement(UPDATE_DROPPED_EVENT, statement -> {
+            statement.bindLong(1, count);
+            statement.bindString(2, verb);
+            return statement.executeUpdateDelete();
+        });
+    }
+
+    /**
+     * Removes context snapshots which are no longer referenced by any queued event.
+     */
+    @Override
+    public void pruneContextSnapshots() {
+        synchronized (snapshotLock) {
+            executeStatement(DELETE_UNREFERENCED_CONTEXT_SNAPSHOTS, SQLiteStatement::executeUpdateDelete);
+        }
+        synchronized (parsedSnapshots) {
+            parsedSnapshots.clear();
+        }
+    }
+
+    /**
+     * Stores the snapshot unless it is contained in the given set of hashes already stored in the
+     * current transaction, and returns its hash. Must be called while holding the snapshot lock.
+     */
+    private String storeContextSnapshot(Map<String, String> snapshot, Set<String> storedSnapshots) {
+        if (snapshot.isEmpty()) {
+            return null;
+        }
+
+        String json = null;
+        if (lastSnapshot == null || !lastSnapshot.equals(snapshot)) {
+            json = GSON.toJson(snapshot);
+            lastSnapshot = snapshot;
+            lastSnapshotHash = hash(json);
+        }
+
+        if (storedSnapshots.add(lastSnapshotHash)) {
+            if (json == null) {
+                json = GSON.toJson(snapshot);
+            }
+            String hash = lastSnapshotHash;
+            String snapshotJson = json;
+            executeStatement(INSERT_CONTEXT_SNAPSHOT, statement -> {
+                statement.bindString(1, hash);
+                statement.bindString(2, snapshotJson);
+                return statement.executeInsert();
+            });
+        }
+
+        return lastSnapshotHash;
+    }
+
+    private static Map<String, String> getContextExtras(Lanalytics.Event event) {
+        Map<String, String> extras = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : event.context.entrySet()) {
+            String key = entry.getKey();
+            String value = entry.getValue();
+            if (!event.defaultContext.containsKey(key) || !equals(value, event.defaultContext.get(key))) {
+                extras.put(key, value);
+            }
+        }
+        return extras;
+    }
+
+    /**
+     * Approximates the stored size of the event in bytes, shared context snapshots are not included.
+     */
+    private static long estimateSize(Lanalytics.Event event, String resultJson, String contextJson) {
+        return length(event.id) + length(event.userId) + length(event.verb) + length(event.resourceId)
+                + length(event.resourceType) + length(resultJson) + length(contextJson) + length(event.timestamp);
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private static Lanalytics.Event.Priority getPriority(int ordinal) {
+        Lanalytics.Event.Priority[] priorities = Lanalytics.Event.Priority.values();
+        return ordinal >= 0 && ordinal < priorities.length ? priorities[ordinal] : Lanalytics.Event.Priority.NORMAL;
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static String hash(String json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(json.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+                builder.append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String placeholders(int count) {
+        StringBuilder builder = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append('?');
+        }
+        return builder.toString();
+    }
+
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    @Override
+    public void add(Lanalytics.Event event) {
+        addAll(Collections.singletonList(event));
+    }
+
+    /**
+     * @return the oldest queued events in insertion order
+     */
     public List<Lanalytics.Event> getTop(int limit) {
-        return getAll("SELECT * FROM " + table.getTableName() + " LIMIT " + limit);
+        return getAll(SELECT_HEAD, new String[]{String.valueOf(limit)});
     }
 
+    /**
+     * @return the oldest queued events that may be sent over mobile data, in insertion order
+     */
     public List<Lanalytics.Event> getTopExcludeWifiOnly(int limit) {
-        return getAll("SELECT * FROM " + table.getTableName() + " WHERE " + EventTable.COLUMN_WIFI_ONLY + " = 0 LIMIT " + limit);
+        return getAll(SELECT_HEAD_EXCLUDE_WIFI_ONLY, new String[]{String.valueOf(limit)});
     }
 
+    /**
+     * Opens the oldest queued events for streaming. Only their ids and sizes are read here, the
+     * rows are queried by their range in the queue when the batch is written. The caller has to
+     * close the batch.
+     *
+     * @param excludeWifiOnly whether events which may only be sent via wifi are skipped
+     */
+    @Override
+    public EventBatch openTop(int limit, boolean excludeWifiOnly) {
+        SQLiteDatabase db = openDatabase();
+
+        List<String> ids = new ArrayList<>();
+        long firstSeq = 0;
+        long lastSeq = -1;
+        long estimatedBytes = 0;
+        Cursor cursor = db.rawQuery(
+                excludeWifiOnly ? SELECT_HEAD_SIZES_EXCLUDE_WIFI_ONLY : SELECT_HEAD_SIZES,
+                new String[]{String.valueOf(limit)});
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getString(0));
+                if (ids.size() == 1) {
+                    firstSeq = cursor.getLong(1);
+                }
+                lastSeq = cursor.getLong(1);
+                estimatedBytes += cursor.getLong(2);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        String[] range = {String.valueOf(firstSeq), String.valueOf(lastSeq)};
+        return new CursorEventBatch(ids, estimatedBytes,
+                () -> db.rawQuery(excludeWifiOnly ? SELECT_RANGE_EXCLUDE_WIFI_ONLY : SELECT_RANGE, range),
+                COLUMN_SNAPSHOT_DATA);
+    }
+
+    @Override
     public int getCountExcludeWifiOnly() {
-        return getCount("SELECT * FROM " + table.getTableName() + " WHERE " + EventTable.COLUMN_WIFI_ONLY + " = 0");
+        return getCount(COUNT_EXCLUDE_WIFI_ONLY);
+    }
+
+    /**
+     * @return the timestamp of the oldest queued event, null if the queue is empty
+     */
+    @Override
+    public String getOldestTimestamp() {
+        Cursor cursor = openDatabase().rawQuery(SELECT_OLDEST_TIMESTAMP, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
     }
 
 }
@@ -0,0 +1,47 @@
+package de.xikolo.lanalytics.database.tables;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Content-addressed store for the default context data shared by many events.
+ * The id column holds a hash of the serialized context map.
+ */
+public class ContextSnapshotTable extends Table {
+
+    public static final String TABLE_NAME = "context_snapshot";
+
+    public static final String COLUMN_DATA = "data";
+
+    private static final String TABLE_CREATE =
+            "CREATE TABLE " + TABLE_NAME + " (" +
+                    COLUMN_ID + " text primary key, " +
+                    COLUMN_DATA + " text " +
+                    ");";
+
+    @Override
+    public String getTableName() {
+        return TABLE_NAME;
+    }
+
+    @Override
+    public String getTableCreate() {
+        return TABLE_CREATE;
+    }
+
+    @Override
+    protected boolean upgradeTo(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 2:
+                return true;
+            case 3:
+                onCreate(db);
+                return true;
+            case 4:
+            case 5:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+}
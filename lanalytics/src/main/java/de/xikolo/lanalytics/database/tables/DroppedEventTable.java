@@ -0,0 +1,47 @@
+package de.xikolo.lanalytics.database.tables;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Number of events evicted from the queue per verb, which have not been reported yet.
+ * The id column holds the verb.
+ */
+public class DroppedEventTable extends Table {
+
+    public static final String TABLE_NAME = "dropped_event";
+
+    public static final String COLUMN_COUNT = "count";
+
+    private static final String TABLE_CREATE =
+            "CREATE TABLE " + TABLE_NAME + " (" +
+                    COLUMN_ID + " text primary key, " +
+                    COLUMN_COUNT + " integer " +
+                    ");";
+
+    @Override
+    public String getTableName() {
+        return TABLE_NAME;
+    }
+
+    @Override
+    public String getTableCreate() {
+        return TABLE_CREATE;
+    }
+
+    @Override
+    protected boolean upgradeTo(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 2:
+            case 3:
+                return true;
+            case 4:
+                onCreate(db);
+                return true;
+            case 5:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+}
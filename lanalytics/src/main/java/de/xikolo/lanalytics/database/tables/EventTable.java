@@ -1,5 +1,7 @@
 package de.xikolo.lanalytics.database.tables;
 
+import android.database.sqlite.SQLiteDatabase;
+
 public class EventTable extends Table {
 
     public static final String TABLE_NAME = "event";
@@ -12,6 +14,22 @@ public class EventTable extends Table {
     public static final String COLUMN_CONTEXT = "context";
     public static final String COLUMN_TIMESTAMP = "timestamp";
     public static final String COLUMN_WIFI_ONLY = "wifi_only";
+    public static final String COLUMN_SEQ = "seq";
+    public static final String COLUMN_CONTEXT_SNAPSHOT = "context_snapshot";
+    public static final String COLUMN_PRIORITY = "priority";
+    public static final String COLUMN_SIZE = "size";
+
+    private static final String INDEX_SEQ_CREATE =
+            "CREATE UNIQUE INDEX IF NOT EXISTS " + TABLE_NAME + "_seq_idx ON " + TABLE_NAME +
+                    " (" + COLUMN_SEQ + ");";
+
+    private static final String INDEX_QUEUE_CREATE =
+            "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_queue_idx ON " + TABLE_NAME +
+                    " (" + COLUMN_WIFI_ONLY + ", " + COLUMN_SEQ + ");";
+
+    private static final String INDEX_EVICTION_CREATE =
+            "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_eviction_idx ON " + TABLE_NAME +
+                    " (" + COLUMN_PRIORITY + ", " + COLUMN_SEQ + ");";
 
     private static final String TABLE_CREATE =
             "CREATE TABLE " + TABLE_NAME + " (" +
@@ -23,7 +41,11 @@ public class EventTable extends Table {
                     COLUMN_RESULT + " text, " +
                     COLUMN_CONTEXT + " text, " +
                     COLUMN_TIMESTAMP + " text, " +
-                    COLUMN_WIFI_ONLY + " integer " +
+                    COLUMN_WIFI_ONLY + " integer, " +
+                    COLUMN_SEQ + " integer, " +
+                    COLUMN_CONTEXT_SNAPSHOT + " text, " +
+                    COLUMN_PRIORITY + " integer, " +
+                    COLUMN_SIZE + " integer " +
                     ");";
 
     @Override
@@ -36,4 +58,45 @@ public class EventTable extends Table {
         return TABLE_CREATE;
     }
 
+    @Override
+    public String[] getIndexCreates() {
+        return new String[]{INDEX_SEQ_CREATE, INDEX_QUEUE_CREATE, INDEX_EVICTION_CREATE};
+    }
+
+    @Override
+    protected boolean upgradeTo(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 2:
+                // keep queued events, rowid reflects their insertion order
+                db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_SEQ + " integer");
+                db.execSQL("UPDATE " + TABLE_NAME + " SET " + COLUMN_SEQ + " = rowid");
+                db.execSQL(INDEX_SEQ_CREATE);
+                db.execSQL(INDEX_QUEUE_CREATE);
+                return true;
+            case 3:
+                // rows without snapshot keep their full context
+                db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_CONTEXT_SNAPSHOT + " text");
+                return true;
+            case 4:
+                // queued events count as normal priority, the size is estimated like for new rows
+                db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_PRIORITY + " integer DEFAULT 1");
+                db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_SIZE + " integer DEFAULT 0");
+                db.execSQL("UPDATE " + TABLE_NAME + " SET " + COLUMN_SIZE + " = " +
+                        "IFNULL(LENGTH(" + COLUMN_ID + "), 0) + " +
+                        "IFNULL(LENGTH(" + COLUMN_USER + "), 0) + " +
+                        "IFNULL(LENGTH(" + COLUMN_VERB + "), 0) + " +
+                        "IFNULL(LENGTH(" + COLUMN_RESOURCE_ID + "), 0) + " +
+                        "IFNULL(LENGTH(" + COLUMN_RESOURCE_TYPE + "), 0) + " +
+                        "IFNULL(LENGTH(" + COLUMN_RESULT + "), 0) + " +
+                        "IFNULL(LENGTH(" + COLUMN_CONTEXT + "), 0) + " +
+                        "IFNULL(LENGTH(" + COLUMN_TIMESTAMP + "), 0)");
+                db.execSQL(INDEX_EVICTION_CREATE);
+                return true;
+            case 5:
+                return true;
+            default:
+                return false;
+        }
+    }
+
 }
@@ -0,0 +1,64 @@
+package de.xikolo.lanalytics.database.tables;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Events the endpoint permanently rejected. They are kept out of the upload queue so that they
+ * no longer block it, but remain available for inspection.
+ */
+public class QuarantinedEventTable extends Table {
+
+    public static final String TABLE_NAME = "quarantined_event";
+
+    public static final String COLUMN_USER = "user";
+    public static final String COLUMN_VERB = "verb";
+    public static final String COLUMN_RESOURCE_ID = "resource_id";
+    public static final String COLUMN_RESOURCE_TYPE = "resource_type";
+    public static final String COLUMN_RESULT = "result";
+    public static final String COLUMN_CONTEXT = "context";
+    public static final String COLUMN_CONTEXT_SNAPSHOT_DATA = "context_snapshot_data";
+    public static final String COLUMN_TIMESTAMP = "timestamp";
+    public static final String COLUMN_STATUS_CODE = "status_code";
+    public static final String COLUMN_QUARANTINED_AT = "quarantined_at";
+
+    private static final String TABLE_CREATE =
+            "CREATE TABLE " + TABLE_NAME + " (" +
+                    COLUMN_ID + " text primary key, " +
+                    COLUMN_USER + " text, " +
+                    COLUMN_VERB + " text, " +
+                    COLUMN_RESOURCE_ID + " text, " +
+                    COLUMN_RESOURCE_TYPE + " text, " +
+                    COLUMN_RESULT + " text, " +
+                    COLUMN_CONTEXT + " text, " +
+                    COLUMN_CONTEXT_SNAPSHOT_DATA + " text, " +
+                    COLUMN_TIMESTAMP + " text, " +
+                    COLUMN_STATUS_CODE + " integer, " +
+                    COLUMN_QUARANTINED_AT + " integer " +
+                    ");";
+
+    @Override
+    public String getTableName() {
+        return TABLE_NAME;
+    }
+
+    @Override
+    public String getTableCreate() {
+        return TABLE_CREATE;
+    }
+
+    @Override
+    protected boolean upgradeTo(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 2:
+            case 3:
+            case 4:
+                return true;
+            case 5:
+                onCreate(db);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+}
@@ -12,8 +12,15 @@ public abstract class Table {
 
     public abstract String getTableCreate();
 
+    public String[] getIndexCreates() {
+        return new String[0];
+    }
+
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(getTableCreate());
+        for (String indexCreate : getIndexCreates()) {
+            db.execSQL(indexCreate);
+        }
     }
 
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
@@ -21,11 +28,11 @@ public abstract class Table {
 
         while (upgradeTo <= newVersion) {
 
-            switch (upgradeTo) {
-                default:
-                    System.out.println("Deleting " + getTableName());
-                    deleteTable(db);
-                    break;
+            if (!upgradeTo(db, upgradeTo)) {
+                // the recreated table already has the latest schema
+                System.out.println("Deleting " + getTableName());
+                deleteTable(db);
+                break;
             }
             upgradeTo++;
 
@@ -37,8 +44,11 @@ public abstract class Table {
      *
      * @param db The SQLite Database
      * @param version The upgrade version
+     * @return false if the table could not be migrated and has to be recreated
      */
-    protected void upgradeTo(SQLiteDatabase db, int version) {}
+    protected boolean upgradeTo(SQLiteDatabase db, int version) {
+        return false;
+    }
 
     public void deleteTable(SQLiteDatabase db) {
         db.execSQL("DROP TABLE IF EXISTS " + getTableName());
@@ -0,0 +1,52 @@
+package de.xikolo.lanalytics.network;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with jitter. Each delay is drawn uniformly from the upper half of the
+ * current exponential step, so that clients failing at the same time do not retry in lockstep.
+ */
+public class Backoff {
+
+    private final long initialDelayMillis;
+
+    private final long maxDelayMillis;
+
+    private final Random random;
+
+    private int attempts;
+
+    public Backoff(long initialDelayMillis, long maxDelayMillis) {
+        this(initialDelayMillis, maxDelayMillis, new Random());
+    }
+
+    public Backoff(long initialDelayMillis, long maxDelayMillis, Random random) {
+        if (initialDelayMillis <= 0 || maxDelayMillis < initialDelayMillis) {
+            throw new IllegalArgumentException("Invalid backoff bounds");
+        }
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.random = random;
+    }
+
+    public synchronized long nextDelay() {
+        long step = initialDelayMillis;
+        for (int i = 0; i < attempts && step < maxDelayMillis; i++) {
+            step *= 2;
+        }
+        step = Math.min(step, maxDelayMillis);
+        attempts++;
+
+        long half = step / 2;
+        return half + (long) (random.nextDouble() * (step - half));
+    }
+
+    public synchronized void reset() {
+        attempts = 0;
+    }
+
+    public synchronized int getAttempts() {
+        return attempts;
+    }
+
+}
@@ -0,0 +1,104 @@
+package de.xikolo.lanalytics.network;
+
+/**
+ * Picks the number of events per upload. The count is bounded by the latency of recent uploads,
+ * where fast full batches let it grow and slow ones halve it, and by a budget for the bytes on
+ * the wire, estimated from the average event size and the observed compression ratio.
+ */
+public class BatchSizer {
+
+    public static final int DEFAULT_MIN_SIZE = 10;
+
+    public static final int DEFAULT_INITIAL_SIZE = 50;
+
+    public static final int DEFAULT_MAX_SIZE = 250;
+
+    public static final long DEFAULT_TARGET_LATENCY_MILLIS = 3000;
+
+    public static final long DEFAULT_TARGET_PAYLOAD_BYTES = 64 * 1024;
+
+    private static final double SMOOTHING = 0.3;
+
+    private final int minSize;
+
+    private final int maxSize;
+
+    private final long targetLatencyMillis;
+
+    private volatile long targetPayloadBytes;
+
+    private int size;
+
+    private double averageEventBytes;
+
+    private double compressionRatio = 1.0;
+
+    public BatchSizer() {
+        this(DEFAULT_MIN_SIZE, DEFAULT_INITIAL_SIZE, DEFAULT_MAX_SIZE, DEFAULT_TARGET_LATENCY_MILLIS, DEFAULT_TARGET_PAYLOAD_BYTES);
+    }
+
+    public BatchSizer(int minSize, int initialSize, int maxSize, long targetLatencyMillis, long targetPayloadBytes) {
+        if (minSize < 1 || initialSize < minSize || maxSize < initialSize) {
+            throw new IllegalArgumentException("Invalid batch size bounds");
+        }
+        this.minSize = minSize;
+        this.size = initialSize;
+        this.maxSize = maxSize;
+        this.targetLatencyMillis = targetLatencyMillis;
+        this.targetPayloadBytes = targetPayloadBytes;
+    }
+
+    /**
+     * @param targetPayloadBytes the preferred number of bytes on the wire per upload
+     */
+    public void setTargetPayloadBytes(long targetPayloadBytes) {
+        this.targetPayloadBytes = targetPayloadBytes;
+    }
+
+    public synchronized int getBatchSize() {
+        if (averageEventBytes <= 0) {
+            return size;
+        }
+        long budget = (long) (targetPayloadBytes * compressionRatio / averageEventBytes);
+        return (int) Math.max(minSize, Math.min(size, budget));
+    }
+
+    /**
+     * @param rawBytes     the size of the serialized batch
+     * @param wireBytes    the size of the batch as sent, which differs from rawBytes if compressed
+     */
+    public synchronized void onSuccess(int count, long rawBytes, long wireBytes, long latencyMillis) {
+        if (count > 0 && rawBytes > 0) {
+            averageEventBytes = smooth(averageEventBytes, (double) rawBytes / count);
+        }
+        if (rawBytes > 0 && wireBytes > 0) {
+            compressionRatio = smooth(compressionRatio, (double) rawBytes / wireBytes);
+        }
+
+        if (latencyMillis > targetLatencyMillis) {
+            shrink();
+        } else if (count >= size) {
+            size = Math.min(maxSize, size + Math.max(1, size / 2));
+        }
+    }
+
+    public synchronized void onFailure() {
+        shrink();
+    }
+
+    /**
+     * @return the smoothed ratio of serialized to transferred bytes, 1.0 without compression
+     */
+    public synchronized double getCompressionRatio() {
+        return compressionRatio;
+    }
+
+    private void shrink() {
+        size = Math.max(minSize, size / 2);
+    }
+
+    private static double smooth(double average, double sample) {
+        return average <= 0 ? sample : average + SMOOTHING * (sample - average);
+    }
+
+}
@@ -0,0 +1,27 @@
+package de.xikolo.lanalytics.network;
+
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.ForwardingSink;
+import okio.Sink;
+
+class CountingSink extends ForwardingSink {
+
+    private long bytesWritten;
+
+    CountingSink(Sink delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public void write(Buffer source, long byteCount) throws IOException {
+        bytesWritten += byteCount;
+        super.write(source, byteCount);
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+}
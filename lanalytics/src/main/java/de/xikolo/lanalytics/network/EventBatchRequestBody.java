@@ -0,0 +1,53 @@
+package de.xikolo.lanalytics.network;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+import de.xikolo.lanalytics.database.EventBatch;
+import de.xikolo.lanalytics.parser.EventBatchWriter;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+
+/**
+ * Writes the JSON:API document for a batch straight into the request sink, row by row.
+ */
+public class EventBatchRequestBody extends RequestBody {
+
+    private final EventBatch batch;
+
+    private volatile long bytesWritten;
+
+    public EventBatchRequestBody(EventBatch batch) {
+        this.batch = batch;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return NetworkCall.JSON_API;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        CountingSink countingSink = new CountingSink(sink);
+        BufferedSink bufferedSink = Okio.buffer(countingSink);
+
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(bufferedSink.outputStream(), StandardCharsets.UTF_8));
+        EventBatchWriter.writeJsonApi(batch, writer);
+        writer.flush();
+
+        bytesWritten = countingSink.getBytesWritten();
+    }
+
+    /**
+     * @return the number of uncompressed bytes written by the last call of {@link #writeTo}
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+}
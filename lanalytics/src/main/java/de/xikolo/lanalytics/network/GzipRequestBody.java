@@ -0,0 +1,50 @@
+package de.xikolo.lanalytics.network;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * Compresses another request body on the fly. Send it with a gzip Content-Encoding header.
+ */
+public class GzipRequestBody extends RequestBody {
+
+    private final RequestBody body;
+
+    private volatile long bytesWritten;
+
+    public GzipRequestBody(RequestBody body) {
+        this.body = body;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return body.contentType();
+    }
+
+    @Override
+    public long contentLength() {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        CountingSink countingSink = new CountingSink(sink);
+        BufferedSink gzipSink = Okio.buffer(new GzipSink(countingSink));
+        body.writeTo(gzipSink);
+        gzipSink.close();
+        bytesWritten = countingSink.getBytesWritten();
+    }
+
+    /**
+     * @return the number of compressed bytes written by the last call of {@link #writeTo}
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+}
@@ -23,7 +23,16 @@ public class NetworkCall {
         return httpClient;
     }
 
-    private static final MediaType JSON_API
+    /**
+     * Replaces the default client, e.g. to share the connection pool of the app.
+     */
+    public static void setDefaultHttpClient(OkHttpClient client) {
+        synchronized (NetworkCall.class) {
+            httpClient = client;
+        }
+    }
+
+    public static final MediaType JSON_API
             = MediaType.parse("application/vnd.api+json");
 
     public NetworkCall(String url) {
@@ -49,6 +58,17 @@ public class NetworkCall {
         return this;
     }
 
+    public NetworkCall postJsonApi(RequestBody body) {
+        builder.post(body);
+        return this;
+    }
+
+    public NetworkCall postJsonApi(GzipRequestBody body) {
+        builder.header("Content-Encoding", "gzip");
+        builder.post(body);
+        return this;
+    }
+
     private Request build() {
         return builder.build();
     }
@@ -0,0 +1,35 @@
+package de.xikolo.lanalytics.network;
+
+import java.io.IOException;
+
+/**
+ * The endpoint refused the request for good, so sending the same payload again cannot succeed.
+ */
+public class UploadRejectedException extends IOException {
+
+    private static final int HTTP_PAYLOAD_TOO_LARGE = 413;
+
+    private static final int HTTP_UNPROCESSABLE_ENTITY = 422;
+
+    private final int statusCode;
+
+    public UploadRejectedException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Only errors caused by the events themselves are permanent, i.e. invalid events or a payload
+     * which is too large. Other client errors, like a misconfigured endpoint or an unsupported
+     * request, hit every batch alike and are retried with backoff instead, as bisecting them would
+     * quarantine the whole queue.
+     */
+    public static boolean isPermanent(int statusCode) {
+        return statusCode == HTTP_UNPROCESSABLE_ENTITY || statusCode == HTTP_PAYLOAD_TOO_LARGE;
+    }
+
+}
@@ -0,0 +1,71 @@
+package de.xikolo.lanalytics.parser;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+import de.xikolo.lanalytics.database.EventBatch;
+
+/**
+ * Streams a batch of stored events as JSON:API document in the format of {@link EventSerializer}.
+ * The stored result is spliced in as it is, the context as merged by the batch.
+ */
+public class EventBatchWriter {
+
+    public static void writeJsonApi(EventBatch batch, JsonWriter writer) throws IOException {
+        boolean single = batch.size() == 1;
+
+        writer.setSerializeNulls(false);
+        writer.beginObject();
+        writer.name("data");
+        if (!single) {
+            writer.beginArray();
+        }
+
+        batch.reset();
+        int written = 0;
+        while (batch.moveToNext()) {
+            writeEvent(batch, writer);
+            written++;
+        }
+        if (written != batch.size()) {
+            // e.g. evicted while uploading, the request fails and the batch is read again
+            throw new IOException("Wrote " + written + " of " + batch.size() + " events, the batch has changed");
+        }
+
+        if (!single) {
+            writer.endArray();
+        }
+        writer.endObject();
+    }
+
+    private static void writeEvent(EventBatch batch, JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("type").value("tracking-events");
+
+        writer.name("attributes").beginObject();
+
+        writer.name("user").beginObject();
+        writer.name("uuid").value(batch.getUser());
+        writer.endObject();
+
+        writer.name("verb").beginObject();
+        writer.name("type").value(batch.getVerb());
+        writer.endObject();
+
+        writer.name("resource").beginObject();
+        writer.name("uuid").value(batch.getResourceId());
+        writer.name("type").value(batch.getResourceType());
+        writer.endObject();
+
+        writer.name("timestamp").value(batch.getTimestamp());
+
+        writer.name("result").jsonValue(batch.getResultJson());
+
+        writer.name("context").jsonValue(batch.getContextJson());
+
+        writer.endObject();
+        writer.endObject();
+    }
+
+}
@@ -7,11 +7,13 @@ import de.xikolo.lanalytics.Lanalytics;
 
 public class Parser {
 
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(JsonApiWrapper.class, new JsonApiSerializer())
+            .registerTypeAdapter(Lanalytics.Event.class, new EventSerializer())
+            .create();
+
     private static Gson getGson() {
-        return new GsonBuilder()
-                .registerTypeAdapter(JsonApiWrapper.class, new JsonApiSerializer())
-                .registerTypeAdapter(Lanalytics.Event.class, new EventSerializer())
-                .create();
+        return GSON;
     }
 
     public static String toJson(Object src) {
@@ -8,6 +8,7 @@ import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.WindowManager;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -15,7 +16,74 @@ import de.xikolo.lanalytics.Lanalytics;
 
 public class ContextUtil {
 
+    // os, device and app details do not change while the process lives
+    private static Map<String, String> staticContext;
+
+    private static Map<String, String> screenContext;
+
+    private static String network;
+
+    private static volatile Map<String, String> cachedContext;
+
+    /**
+     * @return a modifiable copy of the default context data
+     */
     public static Map<String, String> getDefaultContextData(Context context) {
+        return new LinkedHashMap<>(getCachedContextData(context));
+    }
+
+    /**
+     * Returns the default context data shared by all events. The map is immutable and the same
+     * instance is returned until the screen or the network changes.
+     */
+    public static Map<String, String> getCachedContextData(Context context) {
+        Map<String, String> contextMap = cachedContext;
+        if (contextMap == null) {
+            contextMap = buildContextData(context);
+        }
+        return contextMap;
+    }
+
+    /**
+     * Has to be called when the configuration changed, e.g. after a rotation or on a foldable.
+     */
+    public static synchronized void invalidateScreen() {
+        screenContext = null;
+        cachedContext = null;
+    }
+
+    /**
+     * Has to be called when the connectivity changed.
+     */
+    public static synchronized void invalidateNetwork() {
+        network = null;
+        cachedContext = null;
+    }
+
+    private static synchronized Map<String, String> buildContextData(Context context) {
+        if (cachedContext != null) {
+            return cachedContext;
+        }
+
+        if (staticContext == null) {
+            staticContext = getStaticContextData(context);
+        }
+        if (screenContext == null) {
+            screenContext = getScreenContextData(context);
+        }
+        if (network == null) {
+            network = getNetwork(context);
+        }
+
+        Map<String, String> contextMap = new LinkedHashMap<>(staticContext);
+        contextMap.putAll(screenContext);
+        contextMap.put("network", network);
+
+        cachedContext = Collections.unmodifiableMap(contextMap);
+        return cachedContext;
+    }
+
+    private static Map<String, String> getStaticContextData(Context context) {
         Map<String, String> contextMap = new LinkedHashMap<>();
 
         // os details
@@ -37,7 +105,12 @@ public class ContextUtil {
             Log.e(Lanalytics.class.getSimpleName(), "Could not get package info for " + context.getPackageName(), e);
         }
 
-        // screen details
+        return contextMap;
+    }
+
+    private static Map<String, String> getScreenContextData(Context context) {
+        Map<String, String> contextMap = new LinkedHashMap<>();
+
         WindowManager wm = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
         if (wm != null) {
             DisplayMetrics metrics = new DisplayMetrics();
@@ -49,22 +122,20 @@ public class ContextUtil {
             contextMap.put("screen_density", String.valueOf((int) (metrics.density * 160)));
         }
 
-        // network details
-        String network = "unknown";
+        return contextMap;
+    }
+
+    private static String getNetwork(Context context) {
         switch (NetworkUtil.getConnectivityStatus(context)) {
             case WIFI:
-                network = "wifi";
-                break;
+                return "wifi";
             case MOBILE:
-                network = "mobile";
-                break;
+                return "mobile";
             case NOT_CONNECTED:
-                network = "offline";
-                break;
+                return "offline";
+            default:
+                return "unknown";
         }
-        contextMap.put("network", network);
-
-        return contextMap;
     }
 
 }
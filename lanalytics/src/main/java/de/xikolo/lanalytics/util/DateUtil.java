@@ -10,12 +10,21 @@ public class DateUtil {
 
     public static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ssZZZZZ";
 
+    private static volatile int timeZoneGeneration;
+
+    // SimpleDateFormat is not thread-safe, so each thread keeps its own
+    private static final ThreadLocal<Formatter> FORMATTER = new ThreadLocal<Formatter>() {
+        @Override
+        protected Formatter initialValue() {
+            return new Formatter();
+        }
+    };
+
     public static Date parse(String date) {
-        SimpleDateFormat dateFm = new SimpleDateFormat(DATE_FORMAT, Locale.getDefault());
         Date parsedDate = null;
         try {
             if (date != null) {
-                parsedDate = dateFm.parse(date);
+                parsedDate = getFormatter().dateFormat.parse(date);
             }
         } catch (ParseException e) {
             parsedDate = null;
@@ -24,8 +33,52 @@ public class DateUtil {
     }
 
     public static String format(Date date) {
-        SimpleDateFormat dateFm = new SimpleDateFormat(DATE_FORMAT, Locale.getDefault());
-        return dateFm.format(date);
+        return getFormatter().format(date.getTime());
+    }
+
+    public static String formatNow() {
+        return getFormatter().format(System.currentTimeMillis());
+    }
+
+    /**
+     * Makes the cached formatters pick up the new default time zone.
+     */
+    public static void onTimeZoneChanged() {
+        timeZoneGeneration++;
+    }
+
+    private static Formatter getFormatter() {
+        Formatter formatter = FORMATTER.get();
+        if (formatter.generation != timeZoneGeneration) {
+            formatter = new Formatter();
+            FORMATTER.set(formatter);
+        }
+        return formatter;
+    }
+
+    private static class Formatter {
+
+        final int generation = timeZoneGeneration;
+
+        final SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT, Locale.getDefault());
+
+        final Date date = new Date();
+
+        long lastSecond = Long.MIN_VALUE;
+
+        String lastFormatted;
+
+        String format(long millis) {
+            // the format has a resolution of seconds, events within the same second share the string
+            long second = millis / 1000;
+            if (second != lastSecond) {
+                date.setTime(millis);
+                lastFormatted = dateFormat.format(date);
+                lastSecond = second;
+            }
+            return lastFormatted;
+        }
+
     }
 
 }
@@ -0,0 +1,64 @@
+package de.xikolo.lanalytics;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MetricsTest {
+
+    @Test
+    public void testCountersAreSnapshotted() {
+        Metrics metrics = new Metrics();
+        metrics.onTracked();
+        metrics.onTracked();
+        metrics.onTracked();
+        metrics.onPersisted(2);
+        metrics.onDropped(1);
+        metrics.onUploaded(2, 512, 300);
+
+        Metrics.Snapshot snapshot = metrics.snapshot(0, 0, -1, 1.0, Uploader.State.IDLE);
+        assertEquals(3, snapshot.trackedEvents);
+        assertEquals(2, snapshot.persistedEvents);
+        assertEquals(1, snapshot.droppedEvents);
+        assertEquals(2, snapshot.uploadedEvents);
+        assertEquals(512, snapshot.bytesSent);
+        assertNull(snapshot.lastError);
+    }
+
+    @Test
+    public void testCompressionRatioIsReported() {
+        Metrics.Snapshot snapshot = new Metrics().snapshot(0, 0, -1, 4.256, Uploader.State.IDLE);
+        assertEquals(4.256, snapshot.compressionRatio, 0.0001);
+        assertEquals("4.26", snapshot.toMap().get("compression_ratio"));
+    }
+
+    @Test
+    public void testLatenciesAreBucketed() {
+        Metrics metrics = new Metrics();
+        metrics.onUploaded(1, 0, 50);
+        metrics.onUploaded(1, 0, 100);
+        metrics.onUploaded(1, 0, 101);
+        metrics.onUploaded(1, 0, 60000);
+
+        long[] expected = new long[Metrics.LATENCY_BUCKET_BOUNDS.length + 1];
+        expected[0] = 2;
+        expected[1] = 1;
+        expected[expected.length - 1] = 1;
+        assertArrayEquals(expected, metrics.snapshot(0, 0, -1, 1.0, Uploader.State.IDLE).uploadLatencyCounts);
+    }
+
+    @Test
+    public void testLastErrorIsRecordedByClass() {
+        Metrics metrics = new Metrics();
+        metrics.onError(new IOException("Status Code 500"));
+
+        Metrics.Snapshot snapshot = metrics.snapshot(0, 0, -1, 1.0, Uploader.State.BACKING_OFF);
+        assertEquals(IOException.class.getName(), snapshot.lastError);
+        assertEquals(IOException.class.getName(), snapshot.toMap().get("last_error"));
+    }
+
+}
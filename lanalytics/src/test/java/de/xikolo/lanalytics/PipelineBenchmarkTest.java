@@ -0,0 +1,331 @@
+package de.xikolo.lanalytics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.xikolo.lanalytics.database.InMemoryEventStore;
+import de.xikolo.lanalytics.util.NetworkUtil;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs the tracker pipeline on the JVM against a local endpoint. The throughput benchmarks only
+ * run if the environment variable LANALYTICS_BENCHMARK is set and append their numbers to
+ * build/benchmarks/pipeline.txt, e.g.
+ * {@code LANALYTICS_BENCHMARK=1 ./gradlew :lanalytics:testDebugUnitTest --tests '*PipelineBenchmarkTest'}.
+ */
+public class PipelineBenchmarkTest {
+
+    private static final boolean BENCHMARK = System.getenv("LANALYTICS_BENCHMARK") != null;
+
+    private static final File REPORT_FILE = new File("build/benchmarks", "pipeline.txt");
+
+    private static final int EVENT_COUNT = 10000;
+
+    private static final int LARGE_EVENT_COUNT = 100000;
+
+    private static final String USER_ID = "d5d7b0b4-6c1b-4a0e-9d55-6a0b3f1f4e21";
+
+    private static final String VERB_POISON = "POISON";
+
+    private static final Map<String, String> DEFAULT_CONTEXT;
+
+    static {
+        Map<String, String> context = new LinkedHashMap<>();
+        context.put("platform", "Android");
+        context.put("platform_version", "10");
+        context.put("runtime", "Android");
+        context.put("runtime_version", "10");
+        context.put("runtime_api_level", "29");
+        context.put("device", "Google Pixel 3");
+        context.put("build_version", "57");
+        context.put("build_version_name", "3.3.2");
+        context.put("screen_width", "1080");
+        context.put("screen_height", "2160");
+        context.put("screen_density", "440");
+        context.put("network", "wifi");
+        DEFAULT_CONTEXT = Collections.unmodifiableMap(context);
+    }
+
+    private MockWebServer server;
+
+    private Endpoint endpoint;
+
+    private InMemoryEventStore store;
+
+    private Tracker tracker;
+
+    @Before
+    public void setUp() throws Exception {
+        endpoint = new Endpoint();
+        server = new MockWebServer();
+        server.setDispatcher(endpoint);
+        server.start();
+
+        store = new InMemoryEventStore();
+        tracker = new Tracker(new Platform() {
+            @Override
+            public NetworkUtil.NetworkConnection getConnection() {
+                return NetworkUtil.NetworkConnection.WIFI;
+            }
+
+            @Override
+            public Map<String, String> getDefaultContext() {
+                return DEFAULT_CONTEXT;
+            }
+        }, server.url("/api/tracking-events").toString(), store, new NoUploadScheduler());
+        // nothing is scheduled, so the tracker has to upload every backlog right away
+        tracker.setImmediateUploadThreshold(Integer.MAX_VALUE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tracker.stopSending();
+        server.shutdown();
+    }
+
+    @Test
+    public void testTrackPersistUploadThroughput() throws Exception {
+        assumeTrue(BENCHMARK);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            tracker.send(createEvent("VIDEO_PLAY"), null);
+        }
+        long tracked = System.nanoTime();
+        tracker.flush();
+
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        Metrics.Snapshot metrics = tracker.getMetrics();
+        while (metrics.uploadedEvents < EVENT_COUNT - metrics.droppedEvents && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            metrics = tracker.getMetrics();
+        }
+        long uploaded = System.nanoTime();
+
+        assertEquals(0, store.getCount());
+        assertEquals(EVENT_COUNT, metrics.uploadedEvents + metrics.droppedEvents);
+        report("track-persist-upload",
+                "events", EVENT_COUNT,
+                "track_ms", millis(tracked - start),
+                "total_ms", millis(uploaded - start),
+                "events_per_s", perSecond(EVENT_COUNT, uploaded - start),
+                "dropped", metrics.droppedEvents,
+                "requests", endpoint.requests.get(),
+                "bytes_sent", metrics.bytesSent);
+    }
+
+    @Test
+    public void testDrainBacklog() throws IOException {
+        assumeTrue(BENCHMARK);
+
+        drainBacklog(EVENT_COUNT);
+    }
+
+    @Test
+    public void testDrainLargeBacklog() throws IOException {
+        assumeTrue(BENCHMARK);
+
+        drainBacklog(LARGE_EVENT_COUNT);
+    }
+
+    @Test
+    public void testDrainWithInjectedErrorsAndLatency() throws IOException {
+        assumeTrue(BENCHMARK);
+
+        endpoint.failEvery = 4;
+        endpoint.latencyMillis = 20;
+        fillBacklog(EVENT_COUNT, 0);
+
+        long start = System.nanoTime();
+        int attempts = 0;
+        while (attempts < 1000) {
+            attempts++;
+            if (tracker.runScheduledUpload(null, () -> false)) {
+                break;
+            }
+        }
+        long duration = System.nanoTime() - start;
+
+        assertEquals(0, store.getCount());
+        report("drain-errors-latency",
+                "events", EVENT_COUNT,
+                "total_ms", millis(duration),
+                "events_per_s", perSecond(EVENT_COUNT, duration),
+                "attempts", attempts,
+                "requests", endpoint.requests.get(),
+                "failed_requests", endpoint.failures.get());
+    }
+
+    @Test
+    public void testPoisonedBatchesAreBisected() {
+        int poisoned = 3;
+        fillBacklog(1000, poisoned);
+
+        assertTrue(tracker.runScheduledUpload(null, () -> false));
+
+        assertEquals(0, store.getCount());
+        assertEquals(poisoned, store.getQuarantinedCount());
+        assertTrue(endpoint.rejections.get() > 0);
+    }
+
+    @Test
+    public void testStoppedUploadKeepsBacklog() {
+        fillBacklog(100, 0);
+
+        assertFalse(tracker.runScheduledUpload(null, () -> true));
+
+        assertEquals(100, store.getCount());
+        assertEquals(0, endpoint.requests.get());
+    }
+
+    private void drainBacklog(int count) throws IOException {
+        fillBacklog(count, 0);
+
+        long start = System.nanoTime();
+        assertTrue(tracker.runScheduledUpload(null, () -> false));
+        long duration = System.nanoTime() - start;
+
+        assertEquals(0, store.getCount());
+        Metrics.Snapshot metrics = tracker.getMetrics();
+        report("drain-" + count,
+                "events", count,
+                "total_ms", millis(duration),
+                "events_per_s", perSecond(count, duration),
+                "requests", endpoint.requests.get(),
+                "bytes_sent", metrics.bytesSent);
+    }
+
+    /**
+     * Spreads the given number of poisoned events evenly over the backlog.
+     */
+    private void fillBacklog(int count, int poisoned) {
+        int poisonInterval = poisoned > 0 ? count / poisoned : 0;
+        List<Lanalytics.Event> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            boolean poison = poisonInterval > 0 && i % poisonInterval == poisonInterval / 2 && i / poisonInterval < poisoned;
+            events.add(createEvent(poison ? VERB_POISON : "VIDEO_PLAY"));
+        }
+        store.addAll(events);
+    }
+
+    private static Lanalytics.Event createEvent(String verb) {
+        return new Lanalytics.Event.Builder(DEFAULT_CONTEXT)
+                .setUser(USER_ID)
+                .setVerb(verb)
+                .setResource(UUID.randomUUID().toString(), "video")
+                .putResult("current_time", "42.5")
+                .putContext("course_id", "4c6c4b7a-0d8e-4a4b-8f3c-2b6a1f0f6c2e")
+                .putContext("current_speed", "1.0")
+                .build();
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static long perSecond(int count, long nanos) {
+        return nanos > 0 ? count * TimeUnit.SECONDS.toNanos(1) / nanos : 0;
+    }
+
+    private static void report(String name, Object... values) throws IOException {
+        StringBuilder builder = new StringBuilder(name).append(':');
+        for (int i = 0; i + 1 < values.length; i += 2) {
+            builder.append(String.format(Locale.US, " %s=%s", values[i], values[i + 1]));
+        }
+
+        REPORT_FILE.getParentFile().mkdirs();
+        try (Writer writer = new FileWriter(REPORT_FILE, true)) {
+            writer.write(builder.append('\n').toString());
+        }
+    }
+
+    private static class Endpoint extends Dispatcher {
+
+        final AtomicInteger requests = new AtomicInteger();
+
+        final AtomicInteger failures = new AtomicInteger();
+
+        final AtomicInteger rejections = new AtomicInteger();
+
+        volatile int failEvery;
+
+        volatile long latencyMillis;
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            int number = requests.incrementAndGet();
+
+            MockResponse response = new MockResponse().setHeadersDelay(latencyMillis, TimeUnit.MILLISECONDS);
+            if (failEvery > 0 && number % failEvery == 0) {
+                failures.incrementAndGet();
+                return response.setResponseCode(503);
+            }
+            if (request.getBody().readUtf8().contains("\"" + VERB_POISON + "\"")) {
+                rejections.incrementAndGet();
+                return response.setResponseCode(422);
+            }
+            return response.setResponseCode(201);
+        }
+
+    }
+
+    private static class NoUploadScheduler implements UploadScheduler {
+
+        @Override
+        public void setBatchingWindow(long batchingWindowMillis) {
+        }
+
+        @Override
+        public void setDeferUntilCharging(boolean deferUntilCharging) {
+        }
+
+        @Override
+        public void setDeferUntilIdle(boolean deferUntilIdle) {
+        }
+
+        @Override
+        public void schedule(boolean unmetered, boolean urgent) {
+        }
+
+        @Override
+        public void cancel(boolean unmetered) {
+        }
+
+        @Override
+        public void cancelAll() {
+        }
+
+        @Override
+        public void onJobStarted() {
+        }
+
+        @Override
+        public void onJobFinished() {
+        }
+
+    }
+
+}
@@ -0,0 +1,177 @@
+package de.xikolo.lanalytics.database;
+
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.xikolo.lanalytics.Lanalytics;
+
+/**
+ * Event store for running the tracker pipeline on the JVM. Events are serialized like in the
+ * database, but the default context is not deduplicated.
+ */
+public class InMemoryEventStore implements EventStore {
+
+    private static final Gson GSON = new Gson();
+
+    private static class Entry {
+
+        final ListEventBatch.Row row;
+
+        final boolean onlyWifi;
+
+        final Lanalytics.Event.Priority priority;
+
+        final long size;
+
+        Entry(ListEventBatch.Row row, boolean onlyWifi, Lanalytics.Event.Priority priority, long size) {
+            this.row = row;
+            this.onlyWifi = onlyWifi;
+            this.priority = priority;
+            this.size = size;
+        }
+
+    }
+
+    // insertion order is the queue order
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    private final Map<String, Integer> dropped = new LinkedHashMap<>();
+
+    private final Map<String, Integer> quarantined = new LinkedHashMap<>();
+
+    @Override
+    public synchronized void addAll(List<Lanalytics.Event> events) {
+        for (Lanalytics.Event event : events) {
+            if (entries.containsKey(event.id)) {
+                continue;
+            }
+            Map<String, String> context = event.context;
+            if (!dropped.isEmpty() && event.priority == Lanalytics.Event.Priority.HIGH) {
+                context = new LinkedHashMap<>(context);
+                context.put(CONTEXT_DROPPED_EVENTS, GSON.toJson(dropped));
+                dropped.clear();
+            }
+            String resultJson = GSON.toJson(event.result);
+            String contextJson = GSON.toJson(context);
+            ListEventBatch.Row row = new ListEventBatch.Row(event.id, event.userId, event.verb,
+                    event.resourceId, event.resourceType, event.timestamp, resultJson, contextJson);
+            long size = resultJson.length() + contextJson.length();
+            entries.put(event.id, new Entry(row, event.onlyWifi, event.priority, size));
+        }
+    }
+
+    @Override
+    public synchronized EventBatch openTop(int limit, boolean excludeWifiOnly) {
+        List<ListEventBatch.Row> rows = new ArrayList<>(Math.min(limit, entries.size()));
+        for (Entry entry : entries.values()) {
+            if (rows.size() >= limit) {
+                break;
+            }
+            if (!excludeWifiOnly || !entry.onlyWifi) {
+                rows.add(entry.row);
+            }
+        }
+        return new ListEventBatch(rows);
+    }
+
+    @Override
+    public synchronized int acknowledge(List<String> ids) {
+        int deleted = 0;
+        for (String id : ids) {
+            if (entries.remove(id) != null) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public synchronized int quarantine(List<String> ids, int statusCode) {
+        int count = 0;
+        for (String id : ids) {
+            Entry entry = entries.remove(id);
+            if (entry != null) {
+                quarantined.put(id, statusCode);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized int getQuarantinedCount() {
+        return quarantined.size();
+    }
+
+    @Override
+    public synchronized Map<String, Integer> evict(int maxEvents, long maxBytes) {
+        Map<String, Integer> evicted = new LinkedHashMap<>();
+
+        long excessEvents = entries.size() - maxEvents;
+        long excessBytes = -maxBytes;
+        for (Entry entry : entries.values()) {
+            excessBytes += entry.size;
+        }
+
+        for (Lanalytics.Event.Priority priority : Lanalytics.Event.Priority.values()) {
+            if (priority == Lanalytics.Event.Priority.HIGH) {
+                break;
+            }
+            Iterator<Entry> iterator = entries.values().iterator();
+            while ((excessEvents > 0 || excessBytes > 0) && iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.priority != priority) {
+                    continue;
+                }
+                iterator.remove();
+                String verb = String.valueOf(entry.row.verb);
+                Integer count = evicted.get(verb);
+                evicted.put(verb, count == null ? 1 : count + 1);
+                excessEvents--;
+                excessBytes -= entry.size;
+            }
+        }
+
+        for (Map.Entry<String, Integer> entry : evicted.entrySet()) {
+            Integer count = dropped.get(entry.getKey());
+            dropped.put(entry.getKey(), (count == null ? 0 : count) + entry.getValue());
+        }
+        return evicted;
+    }
+
+    @Override
+    public synchronized Map<String, Integer> getDroppedCounts() {
+        return new LinkedHashMap<>(dropped);
+    }
+
+    @Override
+    public void pruneContextSnapshots() {
+    }
+
+    @Override
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized int getCountExcludeWifiOnly() {
+        int count = 0;
+        for (Entry entry : entries.values()) {
+            if (!entry.onlyWifi) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized String getOldestTimestamp() {
+        return entries.isEmpty() ? null : entries.values().iterator().next().row.timestamp;
+    }
+
+}
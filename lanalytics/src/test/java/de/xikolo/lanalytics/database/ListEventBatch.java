@@ -0,0 +1,129 @@
+package de.xikolo.lanalytics.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * List-backed batch holding rows as they would be stored.
+ */
+public class ListEventBatch implements EventBatch {
+
+    public static class Row {
+
+        final String id;
+
+        final String user;
+
+        final String verb;
+
+        final String resourceId;
+
+        final String resourceType;
+
+        final String timestamp;
+
+        final String resultJson;
+
+        final String contextJson;
+
+        public Row(String id, String user, String verb, String resourceId, String resourceType,
+                   String timestamp, String resultJson, String contextJson) {
+            this.id = id;
+            this.user = user;
+            this.verb = verb;
+            this.resourceId = resourceId;
+            this.resourceType = resourceType;
+            this.timestamp = timestamp;
+            this.resultJson = resultJson;
+            this.contextJson = contextJson;
+        }
+
+    }
+
+    private final List<Row> rows;
+
+    private int position = -1;
+
+    public ListEventBatch(List<Row> rows) {
+        this.rows = rows;
+    }
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    @Override
+    public long getEstimatedBytes() {
+        long bytes = 0;
+        for (Row row : rows) {
+            bytes += row.resultJson.length() + row.contextJson.length();
+        }
+        return bytes;
+    }
+
+    @Override
+    public List<String> getIds() {
+        List<String> ids = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            ids.add(row.id);
+        }
+        return Collections.unmodifiableList(ids);
+    }
+
+    @Override
+    public void reset() {
+        position = -1;
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return ++position < rows.size();
+    }
+
+    @Override
+    public String getId() {
+        return rows.get(position).id;
+    }
+
+    @Override
+    public String getUser() {
+        return rows.get(position).user;
+    }
+
+    @Override
+    public String getVerb() {
+        return rows.get(position).verb;
+    }
+
+    @Override
+    public String getResourceId() {
+        return rows.get(position).resourceId;
+    }
+
+    @Override
+    public String getResourceType() {
+        return rows.get(position).resourceType;
+    }
+
+    @Override
+    public String getTimestamp() {
+        return rows.get(position).timestamp;
+    }
+
+    @Override
+    public String getResultJson() {
+        return rows.get(position).resultJson;
+    }
+
+    @Override
+    public String getContextJson() {
+        return rows.get(position).contextJson;
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
@@ -0,0 +1,58 @@
+package de.xikolo.lanalytics.database;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class SubEventBatchTest {
+
+    private static ListEventBatch createBatch(int size) {
+        List<ListEventBatch.Row> rows = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            rows.add(new ListEventBatch.Row("id" + i, "user", "VERB", "resource", "type",
+                    "2020-01-01T00:00:00+00:00", "{}", "{}"));
+        }
+        return new ListEventBatch(rows);
+    }
+
+    private static List<String> readIds(EventBatch batch) {
+        List<String> ids = new ArrayList<>();
+        batch.reset();
+        while (batch.moveToNext()) {
+            ids.add(batch.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testRangeIsReadFromParent() {
+        SubEventBatch sub = new SubEventBatch(createBatch(5), 1, 4);
+
+        assertEquals(3, sub.size());
+        assertEquals(Arrays.asList("id1", "id2", "id3"), sub.getIds());
+        assertEquals(Arrays.asList("id1", "id2", "id3"), readIds(sub));
+        assertFalse(sub.moveToNext());
+    }
+
+    @Test
+    public void testNestedHalvesCanBeReadRepeatedly() {
+        ListEventBatch batch = createBatch(7);
+        SubEventBatch second = new SubEventBatch(batch, 3, 7);
+        SubEventBatch quarter = new SubEventBatch(second, 2, 4);
+
+        assertEquals(Arrays.asList("id5", "id6"), readIds(quarter));
+        assertEquals(Arrays.asList("id3", "id4", "id5", "id6"), readIds(second));
+        assertEquals(Arrays.asList("id5", "id6"), readIds(quarter));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testInvalidRangeIsRejected() {
+        new SubEventBatch(createBatch(2), 1, 3);
+    }
+
+}
@@ -0,0 +1,32 @@
+package de.xikolo.lanalytics.database.access;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class CursorEventBatchTest {
+
+    @Test
+    public void testExtrasOverrideDefaultsOnce() {
+        Map<String, String> defaults = CursorEventBatch.parseObject("{\"platform\":\"android\",\"runtime\":\"app\"}");
+        Map<String, String> extras = CursorEventBatch.parseObject("{\"runtime\":\"web\",\"item\":\"1\"}");
+
+        assertEquals("{\"platform\":\"android\",\"runtime\":\"web\",\"item\":\"1\"}",
+                CursorEventBatch.mergeObjects(defaults, extras));
+    }
+
+    @Test
+    public void testEmptyParts() {
+        Map<String, String> defaults = CursorEventBatch.parseObject("{\"platform\":\"android\"}");
+
+        assertEquals("{\"platform\":\"android\"}",
+                CursorEventBatch.mergeObjects(defaults, CursorEventBatch.parseObject("{}")));
+        assertEquals("{\"platform\":\"android\"}",
+                CursorEventBatch.mergeObjects(Collections.emptyMap(), CursorEventBatch.parseObject("{\"platform\":\"android\"}")));
+        assertEquals("{}", CursorEventBatch.mergeObjects(CursorEventBatch.parseObject(null), Collections.emptyMap()));
+    }
+
+}
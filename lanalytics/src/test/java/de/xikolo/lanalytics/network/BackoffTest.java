@@ -0,0 +1,74 @@
+package de.xikolo.lanalytics.network;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BackoffTest {
+
+    @Test
+    public void testDelaysGrowExponentiallyWithinJitterBounds() {
+        Backoff backoff = new Backoff(1000, 60000, new Random(42));
+
+        long step = 1000;
+        for (int i = 0; i < 10; i++) {
+            long delay = backoff.nextDelay();
+            long bounded = Math.min(step, 60000);
+            assertTrue(delay >= bounded / 2);
+            assertTrue(delay <= bounded);
+            step *= 2;
+        }
+        assertEquals(10, backoff.getAttempts());
+    }
+
+    @Test
+    public void testResetStartsOver() {
+        Backoff backoff = new Backoff(1000, 60000, new Random(42));
+        for (int i = 0; i < 5; i++) {
+            backoff.nextDelay();
+        }
+
+        backoff.reset();
+
+        assertEquals(0, backoff.getAttempts());
+        assertTrue(backoff.nextDelay() <= 1000);
+    }
+
+    @Test
+    public void testBatchSizeAdaptsToLatency() {
+        BatchSizer sizer = new BatchSizer(10, 50, 200, 1000, Long.MAX_VALUE);
+
+        sizer.onSuccess(50, 20000, 20000, 200);
+        assertEquals(75, sizer.getBatchSize());
+
+        // a partial batch says nothing about the capacity of the connection
+        sizer.onSuccess(20, 8000, 8000, 200);
+        assertEquals(75, sizer.getBatchSize());
+
+        sizer.onSuccess(75, 30000, 30000, 5000);
+        assertEquals(37, sizer.getBatchSize());
+
+        sizer.onFailure();
+        sizer.onFailure();
+        assertEquals(10, sizer.getBatchSize());
+    }
+
+    @Test
+    public void testBatchSizeFollowsPayloadBudget() {
+        BatchSizer sizer = new BatchSizer(10, 200, 200, 1000, 10000);
+
+        // 1000 bytes per event, compressed to a tenth
+        sizer.onSuccess(200, 200000, 20000, 200);
+        assertTrue(sizer.getCompressionRatio() > 1);
+        int compressedSize = sizer.getBatchSize();
+        assertTrue(compressedSize > 10 && compressedSize < 200);
+
+        BatchSizer uncompressed = new BatchSizer(10, 200, 200, 1000, 10000);
+        uncompressed.onSuccess(200, 200000, 200000, 200);
+        assertEquals(10, uncompressed.getBatchSize());
+    }
+
+}
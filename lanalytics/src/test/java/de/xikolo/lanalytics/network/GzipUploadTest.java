@@ -0,0 +1,95 @@
+package de.xikolo.lanalytics.network;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import de.xikolo.lanalytics.database.ListEventBatch;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GzipUploadTest {
+
+    private static final int BATCH_SIZE = 100;
+
+    private static final String CONTEXT_JSON = "{\"platform\":\"Android\",\"platform_version\":\"10\","
+            + "\"runtime\":\"Android\",\"runtime_version\":\"10\",\"runtime_api_level\":\"29\","
+            + "\"device\":\"Google Pixel 3\",\"build_version\":\"57\",\"build_version_name\":\"3.3.2\","
+            + "\"screen_width\":\"1080\",\"screen_height\":\"2160\",\"screen_density\":\"440\","
+            + "\"network\":\"wifi\",\"client_id\":\"8b5a1d3e-36a8-4a4c-9d0b-0a2f7e6e4b8c\"}";
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void testGzippedBatchIsDecodedByEndpoint() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(201));
+
+        List<ListEventBatch.Row> rows = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            rows.add(new ListEventBatch.Row(
+                    UUID.randomUUID().toString(),
+                    "d5d7b0b4-6c1b-4a0e-9d55-6a0b3f1f4e21",
+                    "VIDEO_PLAY",
+                    UUID.randomUUID().toString(),
+                    "video",
+                    "2020-06-01T12:00:00+02:00",
+                    "{\"current_time\":\"" + i + "\"}",
+                    CONTEXT_JSON));
+        }
+
+        EventBatchRequestBody body = new EventBatchRequestBody(new ListEventBatch(rows));
+        GzipRequestBody gzipBody = new GzipRequestBody(body);
+
+        Response response = new NetworkCall(server.url("/api/v2/tracking-events").toString())
+                .authorize("token")
+                .postJsonApi(gzipBody)
+                .execute();
+        response.close();
+        assertTrue(response.isSuccessful());
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("gzip", request.getHeader("Content-Encoding"));
+
+        JsonObject document = JsonParser.parseReader(new InputStreamReader(
+                new GZIPInputStream(request.getBody().inputStream()), StandardCharsets.UTF_8)).getAsJsonObject();
+        JsonArray data = document.getAsJsonArray("data");
+        assertEquals(BATCH_SIZE, data.size());
+
+        JsonObject attributes = data.get(7).getAsJsonObject().getAsJsonObject("attributes");
+        assertEquals("VIDEO_PLAY", attributes.getAsJsonObject("verb").get("type").getAsString());
+        assertEquals("7", attributes.getAsJsonObject("result").get("current_time").getAsString());
+        assertEquals("Google Pixel 3", attributes.getAsJsonObject("context").get("device").getAsString());
+
+        // the context is repeated for every event, so the batch compresses well
+        double ratio = (double) body.getBytesWritten() / gzipBody.getBytesWritten();
+        assertTrue("compression ratio " + ratio, ratio > 4);
+    }
+
+}
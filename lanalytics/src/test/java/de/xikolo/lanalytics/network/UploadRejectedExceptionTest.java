@@ -0,0 +1,24 @@
+package de.xikolo.lanalytics.network;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UploadRejectedExceptionTest {
+
+    @Test
+    public void testInvalidEventsArePermanent() {
+        assertTrue(UploadRejectedException.isPermanent(422));
+        assertTrue(UploadRejectedException.isPermanent(413));
+    }
+
+    @Test
+    public void testErrorsOfEveryBatchAreRetried() {
+        int[] statusCodes = {400, 401, 403, 404, 405, 408, 415, 429, 500, 503};
+        for (int statusCode : statusCodes) {
+            assertFalse(String.valueOf(statusCode), UploadRejectedException.isPermanent(statusCode));
+        }
+    }
+
+}